@@ -0,0 +1,60 @@
+package ai.andrew.medicare_backend.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InputSanitizer latency (and, with the gc profiler, allocation) up to the
+ * 1000-character ChatRequest limit:
+ *
+ *   plainText  : an ordinary message, nothing to strip (should allocate nothing)
+ *   withMarkup : the same text padded with whitespace, with a tag and a script block in it
+ *
+ * Part of the regression baseline (src/jmh/baseline.json):
+ *
+ *   ./gradlew jmh -Pjmh.includes=SanitizeInputBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SanitizeInputBenchmark {
+
+    private static final String TEXT = "I have had a sore throat and a runny nose since Monday, "
+            + "and now my head hurts too. What can I take for it? ";
+
+    @Param({"64", "256", "1000"})
+    public int messageLength;
+
+    private String plainText;
+    private String withMarkup;
+
+    @Setup
+    public void setUp() {
+        plainText = repeat(TEXT, messageLength);
+        String half = plainText.substring(0, messageLength / 2);
+        withMarkup = "  <b>" + half + "</b><script>alert('x')</script>"
+                + plainText.substring(half.length()) + " \n";
+    }
+
+    @Benchmark
+    public String plainText() {
+        return InputSanitizer.sanitize(plainText);
+    }
+
+    @Benchmark
+    public String withMarkup() {
+        return InputSanitizer.sanitize(withMarkup);
+    }
+
+    private static String repeat(String text, int length) {
+        return text.repeat(length / text.length() + 1).substring(0, length - 1) + ".";
+    }
+}
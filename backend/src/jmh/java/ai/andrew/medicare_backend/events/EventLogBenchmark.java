@@ -0,0 +1,124 @@
+package ai.andrew.medicare_backend.events;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.Logger;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Logging cost on the request thread, per chat request, with 4 request threads:
+ *
+ *   logbackLines         : the old chat-combined logging, two INFO lines through a
+ *                          Logback file appender ("request received", "response sent")
+ *   eventLog             : what chat-combined records now, a match and a request event
+ *   printStackTrace      : the old OpenAI error path, a stack trace printed to a file
+ *   eventLogUpstreamError: an upstream event carrying the same exception
+ *
+ * The event log writes to a temp file with its production defaults. Recording flat out,
+ * the threads outrun the writer by far, so most events take the drop path (buffer full):
+ * the written and dropped counts printed at the end of each fork show the split.
+ *
+ *   ./gradlew jmh -Pjmh.includes=EventLogBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class EventLogBenchmark {
+
+    private static final String SESSION = "5b0e7c1e-3f2a-4c55-9d8e-2f6a9c1d7b40";
+
+    private final SocketTimeoutException failure = new SocketTimeoutException("Read timed out");
+
+    private Path dir;
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private PrintStream errors;
+    private SimpleMeterRegistry meterRegistry;
+    private EventLog events;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("event-log-bench");
+
+        loggerContext = new LoggerContext();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p %pid --- [%15.15t] %-40.40logger{39} : %m%n");
+        encoder.start();
+        FileAppender<ILoggingEvent> appender = new FileAppender<>();
+        appender.setContext(loggerContext);
+        appender.setFile(dir.resolve("app.log").toString());
+        appender.setEncoder(encoder);
+        appender.start();
+        ch.qos.logback.classic.Logger root = loggerContext.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.addAppender(appender);
+        logger = loggerContext.getLogger("ai.andrew.medicare_backend.controller.ChatController");
+
+        errors = new PrintStream(new BufferedOutputStream(new FileOutputStream(dir.resolve("stderr.log").toFile())));
+
+        meterRegistry = new SimpleMeterRegistry();
+        events = new EventLog(meterRegistry, true, dir.resolve("events.jsonl").toString(), 8192, 256,
+                Duration.ofMillis(200), DataSize.ofMegabytes(50), 5);
+        events.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        events.stop();
+        System.out.printf("%nevents written: %.0f, dropped: %.0f%n",
+                meterRegistry.get("events.written").counter().count(),
+                meterRegistry.get("events.dropped").counter().count());
+        loggerContext.stop();
+        errors.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void logbackLines() {
+        logger.info("Chat request received - SessionId: {}, MessageLength: {}", SESSION, 52);
+        logger.info("Chat response sent - SessionId: {}, Success: true, Partial: {}", SESSION, false);
+    }
+
+    @Benchmark
+    public void eventLog() {
+        events.match(SESSION, "chat-combined", "Common cold");
+        events.request(SESSION, "chat-combined", 200, "ok", 812_345_678L);
+    }
+
+    @Benchmark
+    public void printStackTrace() {
+        failure.printStackTrace(errors);
+    }
+
+    @Benchmark
+    public void eventLogUpstreamError() {
+        events.upstream(SESSION, "openai", "error", 812_345_678L, failure);
+    }
+}
@@ -0,0 +1,85 @@
+package ai.andrew.medicare_backend.interceptor;
+
+import ai.andrew.medicare_backend.config.RateLimitProperties;
+import ai.andrew.medicare_backend.config.RateLimitProperties.Limit;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rate-limit checks/sec with 64 threads, limits set high enough that nothing is rejected:
+ *
+ *   globalBucket    : the old setup, every request CASing one shared bucket
+ *   perClient       : RateLimitInterceptor, each thread a different client
+ *   perClientSameKey: RateLimitInterceptor, all threads the same client
+ *                     (map lookup cost plus the old contention)
+ *
+ *   ./gradlew jmh -Pjmh.includes=RateLimitBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(64)
+public class RateLimitBenchmark {
+
+    private static final long PLENTY = 1_000_000_000_000L;
+
+    private final AtomicInteger clients = new AtomicInteger();
+
+    private Bucket globalBucket;
+    private RateLimitInterceptor interceptor;
+
+    @State(Scope.Thread)
+    public static class Client {
+        String key;
+
+        @Setup
+        public void setUp(RateLimitBenchmark benchmark) {
+            key = "ip:10.0." + benchmark.clients.incrementAndGet() + ".1";
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        globalBucket = Bucket.builder()
+                .addLimit(Bandwidth.builder().capacity(PLENTY).refillGreedy(PLENTY, Duration.ofHours(1)).build())
+                .build();
+        interceptor = new RateLimitInterceptor(new RateLimitProperties(
+                new Limit(PLENTY, Duration.ofHours(1)),
+                Map.of("chat-combined", new Limit(PLENTY, Duration.ofHours(1))),
+                List.of("ip"),
+                Set.of(),
+                100_000), null, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public ConsumptionProbe globalBucket() {
+        return globalBucket.tryConsumeAndReturnRemaining(1);
+    }
+
+    @Benchmark
+    public ConsumptionProbe perClient(Client client) {
+        return interceptor.tryConsume(client.key, "chat-combined");
+    }
+
+    @Benchmark
+    public ConsumptionProbe perClientSameKey() {
+        return interceptor.tryConsume("ip:10.0.0.1", "chat-combined");
+    }
+}
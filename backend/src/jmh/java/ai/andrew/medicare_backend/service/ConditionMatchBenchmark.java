@@ -0,0 +1,128 @@
+package ai.andrew.medicare_backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConditionService.keywordMatch latency against synthetic catalogs of 100 to 100k
+ * conditions (two made-up keywords each, e.g. "qzabc") and messages up to the
+ * 1000-character ChatRequest limit:
+ *
+ *   hit  : the message ends with a keyword of the last condition in the catalog
+ *   miss : plain English, nothing matches, not even approximately
+ *   typo : ends with a misspelled keyword of the last condition (fuzzy match)
+ *
+ * Exact matching is one pass over the text, so time should follow messageLength and
+ * stay flat across catalog sizes. A miss also pays for the fuzzy lookup, which goes
+ * through the trigram index and should grow with the message, not the catalog.
+ * Part of the regression baseline (src/jmh/baseline.json):
+ *
+ *   ./gradlew jmh -Pjmh.includes=ConditionMatchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConditionMatchBenchmark {
+
+    // the last condition also lists this one, to be misspelled as TYPO; no "qz" in it,
+    // which would exactly match the short synthetic keywords
+    private static final String LONG_KEYWORD = "xqpalpitations";
+    private static final String TYPO = "xqpalpitatoins";
+
+    private static final String FILLER = "Hello, I have been feeling a bit off since yesterday and my "
+            + "stomach is not great, I slept badly, I am tired and a little dizzy when I stand up. ";
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int conditions;
+
+    @Param({"64", "256", "1000"})
+    public int messageLength;
+
+    private ConditionService service;
+    private Path catalogFile;
+    private String hit;
+    private String miss;
+    private String typo;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<>(conditions);
+        for (int i = 0; i < conditions; i++) {
+            rows.add(Map.of(
+                    "keywords", i == conditions - 1
+                            ? List.of(keyword(2 * i), keyword(2 * i + 1), LONG_KEYWORD)
+                            : List.of(keyword(2 * i), keyword(2 * i + 1)),
+                    "condition", "Condition " + i,
+                    "advice", "Rest and drink fluids.",
+                    "description", "Synthetic condition number " + i + "."));
+        }
+        catalogFile = Files.createTempFile("catalog-bench", ".json");
+        new ObjectMapper().writeValue(catalogFile.toFile(), rows);
+
+        service = new ConditionService(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "catalogPath", catalogFile.toString());
+        service.init();
+
+        String lastKeyword = keyword(2 * conditions - 1);
+        miss = filler(messageLength);
+        hit = filler(messageLength - lastKeyword.length() - 1) + " " + lastKeyword.toUpperCase();
+        typo = filler(messageLength - TYPO.length() - 1) + " " + TYPO;
+        if (service.keywordMatch(hit) == null || service.keywordMatch(miss) != null
+                || service.keywordMatch(typo) == null
+                || !service.keywordMatch(typo).name().equals("Condition " + (conditions - 1))) {
+            throw new IllegalStateException("synthetic catalog does not match as intended");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        service.shutdown();
+        Files.deleteIfExists(catalogFile);
+    }
+
+    @Benchmark
+    public Object hit() {
+        return service.keywordMatch(hit);
+    }
+
+    @Benchmark
+    public Object miss() {
+        return service.keywordMatch(miss);
+    }
+
+    @Benchmark
+    public Object typo() {
+        return service.keywordMatch(typo);
+    }
+
+    /** "qz" never occurs in the English filler, so these only match where placed. */
+    private static String keyword(int n) {
+        StringBuilder word = new StringBuilder("qz");
+        do {
+            word.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return word.toString();
+    }
+
+    private static String filler(int length) {
+        return FILLER.repeat(length / FILLER.length() + 1).substring(0, length);
+    }
+}
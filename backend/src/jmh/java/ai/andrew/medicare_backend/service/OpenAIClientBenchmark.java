@@ -0,0 +1,117 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.config.OpenAIClientConfig;
+import ai.andrew.medicare_backend.events.EventLog;
+import ai.andrew.medicare_backend.stub.OpenAIStubServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests/sec and allocations per call (run with the gc profiler, the default in
+ * build.gradle) of the OpenAI client against a local stub server:
+ *
+ *   perCallClient : what getChatResponse used to do, a new RestTemplate, ObjectMapper
+ *                   and request maps on every call
+ *   pooledClient  : OpenAIService with the shared pooled client and pre-serialized prompt
+ *
+ *   ./gradlew jmh -Pjmh.includes=OpenAIClientBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class OpenAIClientBenchmark {
+
+    private static final String MESSAGE = "I have a headache and some nausea since this morning";
+
+    private OpenAIStubServer stub;
+    private CloseableHttpClient httpClient;
+    private OpenAIService pooled;
+    private ConditionService conditionService;
+
+    @Setup
+    public void setUp() throws Exception {
+        stub = new OpenAIStubServer(32);
+        conditionService = new ConditionService(new SimpleMeterRegistry());
+        conditionService.init();
+        httpClient = OpenAIClientConfig.pooledClient(32, Duration.ofSeconds(5), Duration.ofSeconds(30),
+                Duration.ofSeconds(2), Duration.ofSeconds(60));
+        pooled = new OpenAIService(conditionService,
+                new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient)),
+                WebClient.create(),
+                new ChatResponseCache(new SimpleMeterRegistry(), false, 0, Duration.ofMinutes(1)),
+                CircuitBreaker.ofDefaults("openai"),
+                new OpenAIRetryPolicy(new SimpleMeterRegistry(), 1, Duration.ZERO, 0, 0),
+                new OpenAIAdmission(new SimpleMeterRegistry(), false, 1, 1, 1, 1, Duration.ZERO, 0, 0,
+                        Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO),
+                new EventLog(new SimpleMeterRegistry(), false, "build/events.jsonl", 16, 16, Duration.ofSeconds(1),
+                        DataSize.ofMegabytes(1), 1),
+                new SimpleMeterRegistry(),
+                "bench-key", stub.url());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        httpClient.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public String pooledClient() {
+        return pooled.getChatResponse(MESSAGE);
+    }
+
+    @Benchmark
+    public Object perCallClient(Blackhole blackhole) {
+        RestTemplate restTemplate = new RestTemplate();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer bench-key");
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        Map<String, Object> systemMessage = new HashMap<>(OpenAIService.SYSTEM_MESSAGE);
+        String context = conditionService.getContextForUserMessage(MESSAGE);
+        List<Map<String, Object>> messages = new ArrayList<>();
+        messages.add(systemMessage);
+        if (!context.isEmpty()) {
+            messages.add(Map.of("role", "assistant", "content", context));
+        }
+        messages.add(Map.of("role", "user", "content", MESSAGE));
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", "gpt-3.5-turbo");
+        payload.put("messages", messages);
+        payload.put("functions", List.of(new HashMap<>(OpenAIService.SYMPTOM_CHECKER_FUNCTION)));
+        payload.put("function_call", "auto");
+
+        blackhole.consume(new ObjectMapper());
+        ResponseEntity<Map> response = restTemplate.postForEntity(stub.url(), new HttpEntity<>(payload, headers), Map.class);
+        return response.getBody();
+    }
+}
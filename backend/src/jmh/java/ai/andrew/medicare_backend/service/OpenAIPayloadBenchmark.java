@@ -0,0 +1,115 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.service.ChatSessionStore.Turn;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the OpenAI request body and response parsing, without the network.
+ * historyTurns is the number of earlier session turns sent along (0 = first message
+ * of a conversation).
+ *
+ *   mapPayload   : the former path, a payload Map per call serialized by Jackson
+ *   writeBody    : OpenAIService.writeCompletionBody, pre-serialized head + messages
+ *   readMap      : the former path, the whole response read into a Map
+ *   readStreaming: OpenAIService.readCompletion, first choice only
+ *
+ * Part of the regression baseline (src/jmh/baseline.json):
+ *
+ *   ./gradlew jmh -Pjmh.includes=OpenAIPayloadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OpenAIPayloadBenchmark {
+
+    private static final String MESSAGE = "I have had a sore throat and a runny nose since Monday, what can I take?";
+    private static final String CONTEXT = "The common cold is a viral infection of your nose and throat.";
+
+    private static final byte[] RESPONSE = ("""
+            {"id":"chatcmpl-8x1","object":"chat.completion","created":1700000000,"model":"gpt-3.5-turbo-0613",
+             "choices":[{"index":0,"message":{"role":"assistant","content":"Oh no, a sore throat and a runny nose \
+            sound like a common cold! Rest, drink warm fluids, and acetaminophen can ease the throat pain. \
+            Please see a doctor if you get a high fever or trouble breathing."},"logprobs":null,"finish_reason":"stop"}],
+             "usage":{"prompt_tokens":412,"completion_tokens":48,"total_tokens":460},"system_fingerprint":null}
+            """).getBytes(StandardCharsets.UTF_8);
+
+    @Param({"0", "10"})
+    public int historyTurns;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<Turn> history;
+    private RawValue systemMessage;
+    private RawValue functions;
+    // stands in for the request stream; both paths write into it, as they do in production
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(8192);
+
+    @Setup
+    public void setUp() throws Exception {
+        history = new ArrayList<>();
+        for (int i = 0; i < historyTurns; i++) {
+            history.add(i % 2 == 0
+                    ? new Turn("user", "Earlier question number " + i + " about my symptoms?")
+                    : new Turn("assistant", "Oh no, that sounds uncomfortable! Rest up and tell me more. " + i));
+        }
+        systemMessage = new RawValue(mapper.writeValueAsString(OpenAIService.SYSTEM_MESSAGE));
+        functions = new RawValue(mapper.writeValueAsString(List.of(OpenAIService.SYMPTOM_CHECKER_FUNCTION)));
+    }
+
+    @Benchmark
+    public int mapPayload() throws Exception {
+        List<Object> messages = new ArrayList<>(history.size() + 3);
+        messages.add(systemMessage);
+        messages.add(Map.of("role", "assistant", "content", CONTEXT));
+        for (Turn turn : history) {
+            messages.add(Map.of("role", turn.role(), "content", turn.content()));
+        }
+        messages.add(Map.of("role", "user", "content", MESSAGE));
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", "gpt-3.5-turbo");
+        payload.put("messages", messages);
+        payload.put("functions", functions);
+        payload.put("function_call", "auto");
+        body.reset();
+        mapper.writeValue(body, payload);
+        return body.size();
+    }
+
+    @Benchmark
+    public int writeBody() throws Exception {
+        body.reset();
+        OpenAIService.writeCompletionBody(body, MESSAGE, CONTEXT, history, false);
+        return body.size();
+    }
+
+    @Benchmark
+    public Object readMap() throws Exception {
+        Map<?, ?> response = mapper.readValue(RESPONSE, Map.class);
+        Map<?, ?> choice = (Map<?, ?>) ((List<?>) response.get("choices")).get(0);
+        return ((Map<?, ?>) choice.get("message")).get("content");
+    }
+
+    @Benchmark
+    public Object readStreaming() throws Exception {
+        try (JsonParser json = mapper.getFactory().createParser(RESPONSE)) {
+            return OpenAIService.readCompletion(json, "message").content();
+        }
+    }
+}
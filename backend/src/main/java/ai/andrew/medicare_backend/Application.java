@@ -1,9 +1,12 @@
 package ai.andrew.medicare_backend;
 
+import ai.andrew.medicare_backend.config.NativeImageHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(NativeImageHints.class)
 public class Application {
 
 	public static void main(String[] args) {
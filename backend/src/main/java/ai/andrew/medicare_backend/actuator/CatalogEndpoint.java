@@ -0,0 +1,58 @@
+package ai.andrew.medicare_backend.actuator;
+
+import ai.andrew.medicare_backend.service.ConditionService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint for the condition catalog, exposed over JMX only by default
+ * (reloading needs no credentials, see management.endpoints.* in application.properties):
+ *
+ *   catalog (GET  /actuator/catalog) : what is being served (source, size, load time)
+ *   reload  (POST /actuator/catalog) : reload the catalog and swap it in
+ *
+ * Reload timings and failures are recorded by ConditionService under catalog.reload.
+ */
+@Component
+@Endpoint(id = "catalog")
+public class CatalogEndpoint {
+
+    private final ConditionService conditionService;
+
+    public CatalogEndpoint(ConditionService conditionService) {
+        this.conditionService = conditionService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> catalog() {
+        return describe(conditionService.snapshot());
+    }
+
+    @WriteOperation
+    public Map<String, Object> reload() {
+        try {
+            Map<String, Object> body = describe(conditionService.reload());
+            body.put("reloaded", true);
+            return body;
+        } catch (IOException | RuntimeException e) {
+            Map<String, Object> body = describe(conditionService.snapshot());
+            body.put("reloaded", false);
+            body.put("error", e.getMessage());
+            return body;
+        }
+    }
+
+    private static Map<String, Object> describe(ConditionService.Snapshot snapshot) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("source", snapshot.source());
+        body.put("conditions", snapshot.catalog().size());
+        body.put("loadedAt", snapshot.loadedAt().toString());
+        return body;
+    }
+}
@@ -0,0 +1,292 @@
+package ai.andrew.medicare_backend.catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of a ConditionCatalog, compiled from data.json at build time
+ * (the catalogSnapshot Gradle task) so startup neither parses JSON nor rebuilds
+ * the keyword automaton.
+ *
+ * Layout (big-endian):
+ *
+ *   "MCAT", format version
+ *   string table   : every distinct string once (UTF-8), referenced by index
+ *   conditions     : fields as string indexes, severity as its ordinal
+ *   matching tables: the compiled KeywordAutomaton arrays, the rows and weight
+ *                    of every pattern, then the FuzzyKeywordIndex trigram lists
+ *                    (see ConditionCatalog.writeIndexes)
+ *
+ * A snapshot is read with one read into a byte array. Strings come from the
+ * table, so a value repeated across conditions ("acetaminophen", "respiratory")
+ * is one String on the heap, and so is each Category.
+ */
+public final class CatalogSnapshot {
+
+    /** File name of the bundled snapshot, next to data.json on the classpath. */
+    public static final String RESOURCE = "data.catalog";
+
+    private static final int MAGIC = 0x4D434154; // "MCAT"
+    private static final int VERSION = 2;
+    private static final int NULL = -1;
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Compiles a data.json file into a snapshot:
+     * {@code CatalogSnapshot <data.json> <data.catalog>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("usage: CatalogSnapshot <data.json> <data.catalog>");
+        }
+        ConditionCatalog catalog;
+        try (InputStream in = Files.newInputStream(Path.of(args[0]))) {
+            catalog = ConditionCatalog.read(in);
+        }
+        Path target = Path.of(args[1]);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(target)) {
+            write(catalog, out);
+        }
+        System.out.printf("Catalog snapshot written - Path: %s, Conditions: %d, Bytes: %d%n",
+                target, catalog.size(), Files.size(target));
+    }
+
+    public static void write(ConditionCatalog catalog, OutputStream target) throws IOException {
+        Writer out = new Writer(new DataOutputStream(new BufferedOutputStream(target)), stringTable(catalog));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(out.ids.size());
+        for (String s : out.ids.keySet()) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.data.write(utf8);
+        }
+
+        writeBody(catalog, out);
+        out.data.flush();
+    }
+
+    /** Reads a whole snapshot; IOException if it is not one, or of another format version. */
+    public static ConditionCatalog read(InputStream in) throws IOException {
+        return read(in.readAllBytes());
+    }
+
+    public static ConditionCatalog read(byte[] bytes) throws IOException {
+        Reader in = new Reader(ByteBuffer.wrap(bytes));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a catalog snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Catalog snapshot format " + version + ", expected " + VERSION);
+            }
+            in.strings = new String[in.readLength(Integer.BYTES)];
+            for (int i = 0; i < in.strings.length; i++) {
+                int length = in.readLength(1);
+                in.strings[i] = new String(bytes, in.buffer.position(), length, StandardCharsets.UTF_8);
+                in.buffer.position(in.buffer.position() + length);
+            }
+
+            Severity[] severities = Severity.values();
+            Map<String, Category> categories = new HashMap<>();
+            Condition[] conditions = new Condition[in.readLength(Integer.BYTES)];
+            for (int i = 0; i < conditions.length; i++) {
+                List<String> keywords = in.strings();
+                String name = in.string();
+                Severity severity = severities[in.readInt()];
+                Category category = categories.computeIfAbsent(in.string(), Category::of);
+                Medication[] medications = new Medication[in.readLength(Integer.BYTES)];
+                for (int m = 0; m < medications.length; m++) {
+                    medications[m] = new Medication(in.string(), in.strings(), in.string(), in.strings());
+                }
+                conditions[i] = new Condition(keywords, name, severity, category, List.of(medications),
+                        in.string(), RedFlags.of(in.strings()), in.string(), in.string());
+            }
+            ConditionCatalog catalog = ConditionCatalog.readIndexes(List.of(conditions), in);
+            if (in.buffer.hasRemaining()) {
+                throw new IOException("Catalog snapshot has " + in.buffer.remaining() + " trailing bytes");
+            }
+            return catalog;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Catalog snapshot is truncated or corrupt", e);
+        }
+    }
+
+    /** Every string the snapshot refers to, numbered in first-use order. */
+    private static Map<String, Integer> stringTable(ConditionCatalog catalog) throws IOException {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        Writer collector = new Writer(new DataOutputStream(OutputStream.nullOutputStream()), ids) {
+            @Override
+            void string(String s) {
+                if (s != null) {
+                    ids.putIfAbsent(s, ids.size());
+                }
+            }
+        };
+        writeBody(catalog, collector);
+        return ids;
+    }
+
+    /** Conditions and matching tables, everything after the string table. */
+    private static void writeBody(ConditionCatalog catalog, Writer out) throws IOException {
+        out.writeInt(catalog.size());
+        for (Condition condition : catalog.conditions()) {
+            out.strings(condition.keywords());
+            out.string(condition.name());
+            out.writeInt(condition.severity().ordinal());
+            out.string(condition.category().name());
+            out.writeInt(condition.medications().size());
+            for (Medication medication : condition.medications()) {
+                out.string(medication.name());
+                out.strings(medication.ingredients());
+                out.string(medication.dosage());
+                out.strings(medication.warnings());
+            }
+            out.string(condition.advice());
+            out.strings(condition.redFlags().items());
+            out.string(condition.duration());
+            out.string(condition.description());
+        }
+        catalog.writeIndexes(out);
+    }
+
+    /** Primitive writes shared by the catalog classes; strings go out as table indexes. */
+    static class Writer {
+
+        private final DataOutputStream data;
+        private final Map<String, Integer> ids;
+
+        Writer(DataOutputStream data, Map<String, Integer> ids) {
+            this.data = data;
+            this.ids = ids;
+        }
+
+        void writeInt(int value) throws IOException {
+            data.writeInt(value);
+        }
+
+        void writeDouble(double value) throws IOException {
+            data.writeDouble(value);
+        }
+
+        void string(String s) throws IOException {
+            data.writeInt(s == null ? NULL : ids.get(s));
+        }
+
+        /** A list of non-null strings; the reader hands it out as an immutable List.of. */
+        void strings(List<String> list) throws IOException {
+            writeInt(list.size());
+            for (String s : list) {
+                if (s == null) {
+                    throw new IOException("Catalog lists cannot hold null, found one in " + list);
+                }
+                string(s);
+            }
+        }
+
+        void ints(int[] values) throws IOException {
+            writeInt(values.length);
+            for (int value : values) {
+                data.writeInt(value);
+            }
+        }
+
+        void longs(long[] values) throws IOException {
+            writeInt(values.length);
+            for (long value : values) {
+                data.writeLong(value);
+            }
+        }
+
+        void chars(char[] values) throws IOException {
+            writeInt(values.length);
+            for (char value : values) {
+                data.writeChar(value);
+            }
+        }
+    }
+
+    /** The reading side of {@link Writer}, over the snapshot bytes. */
+    static final class Reader {
+
+        private final ByteBuffer buffer;
+        private String[] strings;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        double readDouble() {
+            return buffer.getDouble();
+        }
+
+        /**
+         * An element count (or byte length) for an array about to be allocated, checked
+         * against what is left to read: each element takes at least {@code minBytesEach}.
+         * A negative or oversized count means a corrupt file, reported like a truncated one.
+         */
+        int readLength(int minBytesEach) {
+            int length = buffer.getInt();
+            if (length < 0 || (long) length * minBytesEach > buffer.remaining()) {
+                throw new IndexOutOfBoundsException("Length " + length + " with " + buffer.remaining() + " bytes left");
+            }
+            return length;
+        }
+
+        String string() {
+            int id = buffer.getInt();
+            return id == NULL ? null : strings[id];
+        }
+
+        List<String> strings() {
+            String[] list = new String[readLength(Integer.BYTES)];
+            for (int i = 0; i < list.length; i++) {
+                list[i] = string();
+            }
+            return List.of(list); // no nulls (the writer refuses them); immutable, so the records keep it without a copy
+        }
+
+        int[] ints() {
+            int[] values = new int[readLength(Integer.BYTES)];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Integer.BYTES);
+            return values;
+        }
+
+        long[] longs() {
+            long[] values = new long[readLength(Long.BYTES)];
+            buffer.asLongBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Long.BYTES);
+            return values;
+        }
+
+        char[] chars() {
+            char[] values = new char[readLength(Character.BYTES)];
+            buffer.asCharBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Character.BYTES);
+            return values;
+        }
+    }
+}
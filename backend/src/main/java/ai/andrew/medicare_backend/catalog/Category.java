@@ -0,0 +1,30 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Locale;
+
+/**
+ * Body-system category of a condition ("respiratory", "cardiac", ...).
+ * The set is open-ended, so this is a value record rather than an enum.
+ */
+public record Category(String name) {
+
+    public static final Category UNCATEGORIZED = new Category("uncategorized");
+
+    public Category {
+        name = name == null || name.isBlank() ? "uncategorized" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @JsonCreator
+    public static Category of(String name) {
+        return new Category(name);
+    }
+
+    @JsonValue
+    @Override
+    public String name() {
+        return name;
+    }
+}
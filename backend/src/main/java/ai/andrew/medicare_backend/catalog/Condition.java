@@ -0,0 +1,55 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * One row of data.json. Property names match the JSON file, so serializing a
+ * Condition gives the same "symptomResult" shape the frontend already reads.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record Condition(
+        List<String> keywords,
+        @JsonProperty("condition") String name,
+        Severity severity,
+        Category category,
+        @JsonProperty("medication") List<Medication> medications,
+        String advice,
+        @JsonProperty("red_flags") RedFlags redFlags,
+        String duration,
+        String description) {
+
+    public Condition {
+        keywords = keywords == null ? List.of() : List.copyOf(keywords);
+        severity = severity == null ? Severity.UNKNOWN : severity;
+        category = category == null ? Category.UNCATEGORIZED : category;
+        medications = medications == null ? List.of() : List.copyOf(medications);
+        redFlags = redFlags == null ? RedFlags.NONE : redFlags;
+    }
+
+    /** Medication names joined for display, e.g. "DayQuil/NyQuil, Ibuprofen". */
+    @JsonIgnore
+    public String medicationSummary() {
+        return medications.stream().map(Medication::name).collect(Collectors.joining(", "));
+    }
+
+    /** True when there is anything worth showing the user besides the keywords. */
+    @JsonIgnore
+    public boolean hasGuidance() {
+        return name != null || !medications.isEmpty() || advice != null;
+    }
+
+    /** Plain English answer used by the analyze endpoints. */
+    @JsonIgnore
+    public String answerText() {
+        return """
+                Condition: %s
+                Medication: %s
+                Advice: %s
+                """.formatted(name, medicationSummary(), advice);
+    }
+}
@@ -0,0 +1,421 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Immutable, indexed view of data.json.
+ *
+ * Everything is computed once when the catalog is built: the keyword automaton
+ * used for symptom matching plus secondary indexes by category, severity,
+ * medication name and ingredient, and a trigram index of the keywords for
+ * typo-tolerant matching. Lookups never scan the whole list.
+ *
+ * A catalog can also be loaded from a CatalogSnapshot, which stores the conditions
+ * and the matching tables precomputed; only the small lookup indexes are rebuilt.
+ */
+public final class ConditionCatalog {
+
+    private static final ObjectReader READER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+            .readerFor(new TypeReference<List<Condition>>() {});
+
+    /** Extra score per red flag of a condition that the message mentions. */
+    static final double RED_FLAG_BOOST = 0.5;
+
+    private final List<Condition> conditions;
+
+    // One automaton over keywords and red flags ("patterns"), so ranking is a single pass.
+    // payload = first row listing the pattern as a keyword, MAX_VALUE for red-flag-only patterns
+    private final KeywordAutomaton automaton;
+    private final int[][] keywordRows;   // rows listing pattern id as a keyword, ascending
+    private final int[][] redFlagRows;   // rows listing pattern id as a red flag, ascending
+    private final double[] keywordWeight; // rarer keywords say more about the condition
+    private final FuzzyKeywordIndex fuzzy; // keyword pattern ids by trigram
+
+    private final Map<Category, List<Condition>> byCategory;
+    private final Map<Severity, List<Condition>> bySeverity;
+    private final Map<String, List<Condition>> byMedicationName;
+    private final Map<String, List<Condition>> byIngredient;
+
+    private ConditionCatalog(List<Condition> conditions, KeywordAutomaton automaton,
+                             int[][] keywordRows, int[][] redFlagRows, double[] keywordWeight,
+                             FuzzyKeywordIndex fuzzy) {
+        this.conditions = List.copyOf(conditions);
+        this.automaton = automaton;
+        this.keywordRows = keywordRows;
+        this.redFlagRows = redFlagRows;
+        this.keywordWeight = keywordWeight;
+        this.fuzzy = fuzzy;
+        this.byCategory = index(this.conditions, c -> List.of(c.category()));
+        this.bySeverity = index(this.conditions, c -> List.of(c.severity()));
+        this.byMedicationName = index(this.conditions, c -> c.medications().stream()
+                .map(m -> normalize(m.name()))
+                .toList());
+        this.byIngredient = index(this.conditions, c -> c.medications().stream()
+                .flatMap(m -> m.ingredients().stream())
+                .map(ConditionCatalog::normalize)
+                .toList());
+    }
+
+    /** Indexes the conditions from scratch: the automaton plus rows and weights per pattern. */
+    private static ConditionCatalog build(List<Condition> conditionList) {
+        List<Condition> conditions = List.copyOf(conditionList);
+
+        Map<String, List<Integer>> rowsByKeyword = new LinkedHashMap<>();
+        Map<String, List<Integer>> rowsByRedFlag = new LinkedHashMap<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            for (String keyword : condition.keywords()) {
+                addRow(rowsByKeyword.computeIfAbsent(keyword, k -> new ArrayList<>()), i);
+                rowsByRedFlag.computeIfAbsent(keyword, k -> new ArrayList<>());
+            }
+            for (String redFlag : condition.redFlags().items()) {
+                // red flags are new to matching, so they follow the lowercased user text
+                String pattern = redFlag.toLowerCase();
+                rowsByKeyword.computeIfAbsent(pattern, k -> new ArrayList<>());
+                addRow(rowsByRedFlag.computeIfAbsent(pattern, k -> new ArrayList<>()), i);
+            }
+        }
+
+        List<String> patterns = new ArrayList<>(rowsByKeyword.keySet());
+        int count = patterns.size();
+        int[][] keywordRows = new int[count][];
+        int[][] redFlagRows = new int[count][];
+        double[] keywordWeight = new double[count];
+        int[] payloads = new int[count];
+        for (int id = 0; id < count; id++) {
+            String pattern = patterns.get(id);
+            keywordRows[id] = toArray(rowsByKeyword.get(pattern));
+            redFlagRows[id] = toArray(rowsByRedFlag.get(pattern));
+            payloads[id] = keywordRows[id].length == 0 ? Integer.MAX_VALUE : keywordRows[id][0];
+            keywordWeight[id] = keywordRows[id].length == 0
+                    ? 0.0
+                    : Math.log(1.0 + (double) conditions.size() / keywordRows[id].length);
+        }
+        KeywordAutomaton automaton = KeywordAutomaton.build(patterns, payloads);
+        return new ConditionCatalog(conditions, automaton, keywordRows, redFlagRows, keywordWeight,
+                fuzzyIndex(automaton, keywordRows));
+    }
+
+    /** Writes the matching tables (automaton, rows per pattern, weights, fuzzy index); see CatalogSnapshot. */
+    void writeIndexes(CatalogSnapshot.Writer out) throws IOException {
+        automaton.write(out);
+        out.writeInt(keywordRows.length);
+        for (int id = 0; id < keywordRows.length; id++) {
+            out.ints(keywordRows[id]);
+            out.ints(redFlagRows[id]);
+            out.writeDouble(keywordWeight[id]);
+        }
+        fuzzy.write(out);
+    }
+
+    /** A catalog of {@code conditions} with the tables written by {@link #writeIndexes}. */
+    static ConditionCatalog readIndexes(List<Condition> conditions, CatalogSnapshot.Reader in) throws IOException {
+        KeywordAutomaton automaton = KeywordAutomaton.read(in);
+        int count = in.readLength(2 * Integer.BYTES + Double.BYTES); // two row lengths and a weight each
+        int[][] keywordRows = new int[count][];
+        int[][] redFlagRows = new int[count][];
+        double[] keywordWeight = new double[count];
+        for (int id = 0; id < count; id++) {
+            keywordRows[id] = in.ints();
+            redFlagRows[id] = in.ints();
+            keywordWeight[id] = in.readDouble();
+        }
+        return new ConditionCatalog(conditions, automaton, keywordRows, redFlagRows, keywordWeight,
+                FuzzyKeywordIndex.read(in));
+    }
+
+    public static ConditionCatalog of(List<Condition> conditions) {
+        return build(conditions);
+    }
+
+    /** Reads a catalog in data.json format. Only the first top-level array is read. */
+    public static ConditionCatalog read(InputStream in) throws IOException {
+        List<Condition> conditions = READER.readValue(in);
+        return build(conditions);
+    }
+
+    public List<Condition> conditions() {
+        return conditions;
+    }
+
+    public int size() {
+        return conditions.size();
+    }
+
+    /**
+     * First condition (in catalog order) having a keyword contained in the
+     * already-lowercased text, or null. One pass over the text.
+     */
+    public Condition firstMatch(String lowerText) {
+        int row = automaton.minPayload(lowerText);
+        return row < 0 ? null : conditions.get(row);
+    }
+
+    /**
+     * Typo-tolerant fallback for {@link #firstMatch}: the first condition listing the
+     * keyword closest to some words of the text, or null. See FuzzyKeywordIndex for how
+     * {@code minSimilarity} and {@code maxEdits} apply.
+     */
+    public Condition fuzzyMatch(String lowerText, double minSimilarity, int maxEdits) {
+        int patternId = fuzzy.closest(lowerText, minSimilarity, maxEdits);
+        return patternId < 0 ? null : conditions.get(keywordRows[patternId][0]);
+    }
+
+    /** Every condition having a keyword contained in the already-lowercased text, in catalog order. */
+    public List<Condition> allMatches(String lowerText) {
+        BitSet hits = new BitSet();
+        automaton.scan(lowerText, (patternId, end) -> {
+            for (int row : keywordRows[patternId]) {
+                hits.set(row);
+            }
+        });
+        List<Condition> matches = new ArrayList<>(hits.cardinality());
+        for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1)) {
+            matches.add(conditions.get(i));
+        }
+        return matches;
+    }
+
+    /**
+     * Ranks the conditions whose keywords occur in the already-lowercased text
+     * and returns the best {@code topK}, highest score first.
+     *
+     * score = (sum of matched keyword weights) * severity boost + RED_FLAG_BOOST * red flags mentioned
+     *
+     * Cost is one pass over the text plus work proportional to the matches;
+     * the top-K selection uses a heap of size K, never a sort of all candidates.
+     * Red flags only boost conditions that already have a keyword hit.
+     */
+    public List<ScoredCondition> rank(String lowerText, int topK) {
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        // 1) distinct patterns found in the text
+        int[][] found = {new int[16]};
+        int[] size = {0};
+        automaton.scan(lowerText, (patternId, end) -> {
+            if (size[0] == found[0].length) {
+                found[0] = Arrays.copyOf(found[0], size[0] * 2);
+            }
+            found[0][size[0]++] = patternId;
+        });
+        if (size[0] == 0) {
+            return List.of();
+        }
+        int[] patterns = Arrays.stream(found[0], 0, size[0]).sorted().distinct().toArray();
+
+        // 2) accumulate per touched row
+        RowScores scores = new RowScores(patterns.length * 2);
+        for (int p : patterns) {
+            for (int row : keywordRows[p]) {
+                scores.addKeyword(row, keywordWeight[p]);
+            }
+            for (int row : redFlagRows[p]) {
+                scores.addRedFlag(row);
+            }
+        }
+
+        // 3) bounded min-heap of the best K; ties go to the earlier catalog row
+        PriorityQueue<double[]> heap = new PriorityQueue<>(topK + 1, (a, b) -> a[0] != b[0]
+                ? Double.compare(a[0], b[0])
+                : Double.compare(b[1], a[1]));
+        scores.forEach((row, keywordScore, redFlags) -> {
+            if (keywordScore <= 0) {
+                return;
+            }
+            double score = keywordScore * conditions.get(row).severity().rankingBoost() + RED_FLAG_BOOST * redFlags;
+            if (heap.size() < topK) {
+                heap.add(new double[] {score, row});
+            } else {
+                double[] worst = heap.peek();
+                if (score > worst[0] || (score == worst[0] && row < worst[1])) {
+                    heap.poll();
+                    heap.add(new double[] {score, row});
+                }
+            }
+        });
+
+        ScoredCondition[] ranked = new ScoredCondition[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            double[] entry = heap.poll();
+            ranked[i] = describe((int) entry[1], entry[0], patterns);
+        }
+        return List.of(ranked);
+    }
+
+    private ScoredCondition describe(int row, double score, int[] patterns) {
+        List<String> keywords = new ArrayList<>();
+        List<String> redFlags = new ArrayList<>();
+        for (int p : patterns) {
+            if (Arrays.binarySearch(keywordRows[p], row) >= 0) {
+                keywords.add(automaton.keyword(p));
+            }
+            if (Arrays.binarySearch(redFlagRows[p], row) >= 0) {
+                redFlags.add(automaton.keyword(p));
+            }
+        }
+        return new ScoredCondition(conditions.get(row), Math.round(score * 1000) / 1000.0, keywords, redFlags);
+    }
+
+    public List<Condition> byCategory(Category category) {
+        return byCategory.getOrDefault(category, List.of());
+    }
+
+    public List<Condition> bySeverity(Severity severity) {
+        return bySeverity.getOrDefault(severity, List.of());
+    }
+
+    public List<Condition> byMedicationName(String name) {
+        return byMedicationName.getOrDefault(normalize(name), List.of());
+    }
+
+    public List<Condition> byIngredient(String ingredient) {
+        return byIngredient.getOrDefault(normalize(ingredient), List.of());
+    }
+
+    public List<Category> categories() {
+        return List.copyOf(byCategory.keySet());
+    }
+
+    private static String normalize(String key) {
+        return key == null ? "" : key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static <K> Map<K, List<Condition>> index(List<Condition> conditions,
+                                                    Function<Condition, List<K>> keys) {
+        Map<K, List<Condition>> building = new LinkedHashMap<>();
+        for (Condition condition : conditions) {
+            for (K key : keys.apply(condition)) {
+                List<Condition> bucket = building.computeIfAbsent(key, k -> new ArrayList<>());
+                if (bucket.isEmpty() || bucket.get(bucket.size() - 1) != condition) {
+                    bucket.add(condition);
+                }
+            }
+        }
+        Map<K, List<Condition>> frozen = new LinkedHashMap<>();
+        building.forEach((key, bucket) -> frozen.put(key, List.copyOf(bucket)));
+        return Collections.unmodifiableMap(frozen);
+    }
+
+    /** Indexes the patterns that are keywords of some condition (not red flags only). */
+    private static FuzzyKeywordIndex fuzzyIndex(KeywordAutomaton automaton, int[][] keywordRows) {
+        List<String> keywords = new ArrayList<>();
+        int[] ids = new int[keywordRows.length];
+        for (int id = 0; id < keywordRows.length; id++) {
+            if (keywordRows[id].length > 0) {
+                ids[keywords.size()] = id;
+                keywords.add(automaton.keyword(id));
+            }
+        }
+        return FuzzyKeywordIndex.build(keywords, ids);
+    }
+
+    private static int[] toArray(List<Integer> rows) {
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void addRow(List<Integer> rows, int row) {
+        if (rows.isEmpty() || rows.get(rows.size() - 1) != row) {
+            rows.add(row);
+        }
+    }
+
+    /**
+     * Small open-addressing map row -> (keyword score, red flag count), sized by the
+     * number of matched patterns rather than the catalog, so ranking cost stays flat.
+     */
+    private static final class RowScores {
+
+        interface Visitor {
+            void visit(int row, double keywordScore, int redFlags);
+        }
+
+        private int[] rows;
+        private double[] keywordScores;
+        private int[] redFlags;
+        private int size;
+
+        RowScores(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+            allocate(capacity);
+        }
+
+        // slot() first: it may grow the table, and the array must be read after that
+        void addKeyword(int row, double weight) {
+            int i = slot(row);
+            keywordScores[i] += weight;
+        }
+
+        void addRedFlag(int row) {
+            int i = slot(row);
+            redFlags[i]++;
+        }
+
+        void forEach(Visitor visitor) {
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i] >= 0) {
+                    visitor.visit(rows[i], keywordScores[i], redFlags[i]);
+                }
+            }
+        }
+
+        private int slot(int row) {
+            int mask = rows.length - 1;
+            int i = (row * 0x9E3779B9) >>> 1 & mask;
+            while (rows[i] >= 0) {
+                if (rows[i] == row) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            if ((size + 1) * 2 > rows.length) {
+                grow();
+                return slot(row);
+            }
+            rows[i] = row;
+            size++;
+            return i;
+        }
+
+        private void grow() {
+            int[] oldRows = rows;
+            double[] oldScores = keywordScores;
+            int[] oldFlags = redFlags;
+            allocate(oldRows.length * 2);
+            size = 0;
+            for (int i = 0; i < oldRows.length; i++) {
+                if (oldRows[i] >= 0) {
+                    int j = slot(oldRows[i]);
+                    keywordScores[j] = oldScores[i];
+                    redFlags[j] = oldFlags[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            rows = new int[capacity];
+            Arrays.fill(rows, -1);
+            keywordScores = new double[capacity];
+            redFlags = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package ai.andrew.medicare_backend.catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Typo-tolerant keyword lookup, the fallback after an exact KeywordAutomaton miss:
+ * "head ache", "nausia" and "stuffy-nose" find "headache", "nausea" and "stuffy nose".
+ *
+ * Keywords and text are compared as words: lowercase, with anything but letters and
+ * digits read as a space. Every keyword is indexed by its first letter and each of
+ * its trigrams (padded with a space at both ends). Each run of one to a few words
+ * of the text looks up its trigrams, and only the keywords sharing enough of them (all but 3 per allowed edit,
+ * and a Dice coefficient of at least minSimilarity) are verified with an edit
+ * distance that gives up past the bound. Candidates come from the shortest posting
+ * lists only, so a lookup never walks the whole keyword list, nor the keywords
+ * behind a trigram they nearly all share.
+ *
+ * Allowed edits grow with the keyword: none under 5 characters (short words are one
+ * edit away from too many others), 1 up to 8, then maxEdits. The first letter must
+ * match, as typos rarely hit it and it keeps "never" from reading as "fever"; being
+ * part of the index key, it also keeps the words of a message from even looking at
+ * the keywords of other letters.
+ */
+final class FuzzyKeywordIndex {
+
+    /** Shortest keyword that may differ by one edit; shorter ones only match exactly. */
+    static final int MIN_FUZZY_LENGTH = 5;
+    private static final int LONG_KEYWORD = 9;
+    private static final Comparator<int[]> BY_LENGTH = Comparator.comparingInt(list -> list.length);
+
+    private final String[] keywords;  // normalized
+    private final int[] keywordIds;   // the caller's id of each keyword
+    private final int[] gramCounts;   // distinct trigrams per keyword
+
+    // keywords with first letter and trigram gramKeys[e] are postings[e], ascending;
+    // table is open addressing over the entries (e + 1, 0 = empty)
+    private final long[] gramKeys;
+    private final int[][] postings;
+    private final int[] table;
+
+    private final int maxWords;
+    private final int minLength;
+    private final int maxLength;
+
+    private FuzzyKeywordIndex(String[] keywords, int[] keywordIds, int[] gramCounts,
+                              long[] gramKeys, int[][] postings) {
+        this.keywords = keywords;
+        this.keywordIds = keywordIds;
+        this.gramCounts = gramCounts;
+        this.gramKeys = gramKeys;
+        this.postings = postings;
+        this.table = new int[Integer.highestOneBit(Math.max(4, gramKeys.length) * 2 - 1) << 1];
+        for (int e = 0; e < gramKeys.length; e++) {
+            table[slot(gramKeys[e])] = e + 1;
+        }
+        int words = 0;
+        int shortest = Integer.MAX_VALUE;
+        int longest = 0;
+        for (String keyword : keywords) {
+            words = Math.max(words, (int) keyword.chars().filter(c -> c == ' ').count() + 1);
+            shortest = Math.min(shortest, keyword.length());
+            longest = Math.max(longest, keyword.length());
+        }
+        // one more word than the longest keyword, for a keyword typed apart ("head ache")
+        this.maxWords = words + 1;
+        this.minLength = shortest;
+        this.maxLength = longest;
+    }
+
+    /**
+     * Indexes {@code keywords}; {@code ids[i]} is what {@link #closest} returns for
+     * keywords[i]. Keywords normalizing to under MIN_FUZZY_LENGTH characters are left out.
+     */
+    static FuzzyKeywordIndex build(List<String> keywords, int[] ids) {
+        List<String> kept = new ArrayList<>();
+        List<Integer> keptIds = new ArrayList<>();
+        for (int i = 0; i < keywords.size(); i++) {
+            String keyword = normalize(keywords.get(i));
+            if (keyword.length() >= MIN_FUZZY_LENGTH) {
+                kept.add(keyword);
+                keptIds.add(ids[i]);
+            }
+        }
+
+        // every (first letter + trigram, keyword) pair, keyed apart from the keywords
+        int[] gramCounts = new int[kept.size()];
+        long[][] keywordGrams = new long[kept.size()][];
+        int pairs = 0;
+        for (int k = 0; k < kept.size(); k++) {
+            String keyword = kept.get(k);
+            long[] grams = new long[keyword.length()];
+            gramCounts[k] = trigrams(keyword, grams);
+            keywordGrams[k] = new long[gramCounts[k]];
+            for (int g = 0; g < gramCounts[k]; g++) {
+                keywordGrams[k][g] = key(keyword.charAt(0), grams[g]);
+            }
+            pairs += gramCounts[k];
+        }
+        long[] all = new long[pairs];
+        int filled = 0;
+        for (long[] grams : keywordGrams) {
+            System.arraycopy(grams, 0, all, filled, grams.length);
+            filled += grams.length;
+        }
+        long[] gramKeys = Arrays.stream(all).sorted().distinct().toArray();
+
+        // keywords are visited in order, so every posting list comes out ascending
+        int[] sizes = new int[gramKeys.length];
+        for (long[] grams : keywordGrams) {
+            for (long gram : grams) {
+                sizes[Arrays.binarySearch(gramKeys, gram)]++;
+            }
+        }
+        int[][] postings = new int[gramKeys.length][];
+        for (int e = 0; e < postings.length; e++) {
+            postings[e] = new int[sizes[e]];
+            sizes[e] = 0;
+        }
+        for (int k = 0; k < keywordGrams.length; k++) {
+            for (long gram : keywordGrams[k]) {
+                int e = Arrays.binarySearch(gramKeys, gram);
+                postings[e][sizes[e]++] = k;
+            }
+        }
+        return new FuzzyKeywordIndex(kept.toArray(String[]::new),
+                keptIds.stream().mapToInt(Integer::intValue).toArray(), gramCounts, gramKeys, postings);
+    }
+
+    /** Writes the index for a CatalogSnapshot; the hash table is rebuilt on reading. */
+    void write(CatalogSnapshot.Writer out) throws IOException {
+        out.strings(Arrays.asList(keywords));
+        out.ints(keywordIds);
+        out.ints(gramCounts);
+        out.longs(gramKeys);
+        for (int[] posting : postings) {
+            out.ints(posting);
+        }
+    }
+
+    static FuzzyKeywordIndex read(CatalogSnapshot.Reader in) throws IOException {
+        String[] keywords = in.strings().toArray(new String[0]);
+        int[] keywordIds = in.ints();
+        int[] gramCounts = in.ints();
+        long[] gramKeys = in.longs();
+        int[][] postings = new int[gramKeys.length][];
+        for (int e = 0; e < postings.length; e++) {
+            postings[e] = in.ints();
+        }
+        return new FuzzyKeywordIndex(keywords, keywordIds, gramCounts, gramKeys, postings);
+    }
+
+    int size() {
+        return keywords.length;
+    }
+
+    /**
+     * Id of the keyword closest to some run of words in the text, or -1 if none is
+     * within its allowed edits and at least {@code minSimilarity} alike. Fewest edits
+     * win, then the higher similarity, then the smaller id.
+     */
+    int closest(String text, double minSimilarity, int maxEdits) {
+        if (keywords.length == 0) {
+            return -1;
+        }
+        String[] words = normalize(text).split(" ");
+        int best = -1;
+        int bestEdits = Integer.MAX_VALUE;
+        double bestSimilarity = 0;
+
+        int[] candidates = new int[64];
+        long[] grams = new long[maxLength + maxEdits];
+        int[][] lists = new int[maxLength + 2 * maxEdits + 2][];
+        StringBuilder window = new StringBuilder();
+        for (int start = 0; start < words.length; start++) {
+            window.setLength(0);
+            for (int end = start; end < words.length && end - start < maxWords; end++) {
+                if (end > start) {
+                    window.append(' ');
+                }
+                window.append(words[end]);
+                if (window.length() > maxLength + maxEdits) {
+                    break;
+                }
+                if (window.length() < minLength - allowedEdits(minLength, maxEdits)) {
+                    continue;
+                }
+                int gramCount = trigrams(window, grams);
+                int listCount = 0;
+                for (int g = 0; g < gramCount; g++) {
+                    int entry = table[slot(key(window.charAt(0), grams[g]))];
+                    if (entry != 0) {
+                        lists[listCount++] = postings[entry - 1];
+                    }
+                }
+                // Each edit changes at most 3 trigrams, so a keyword close enough shares all
+                // but 3 per edit with the phrase, and so is in one of the n - minShared + 1
+                // shortest posting lists. Common trigrams (long lists) are only probed.
+                int mostEdits = allowedEdits(window.length() + maxEdits, maxEdits);
+                int minShared = Math.max(1, gramCount - 3 * mostEdits);
+                if (listCount < minShared) {
+                    continue;
+                }
+                Arrays.sort(lists, 0, listCount, BY_LENGTH);
+                int prefix = listCount - minShared + 1;
+
+                int count = 0;
+                for (int l = 0; l < prefix; l++) {
+                    int[] posting = lists[l];
+                    if (count + posting.length > candidates.length) {
+                        candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, count + posting.length));
+                    }
+                    System.arraycopy(posting, 0, candidates, count, posting.length);
+                    count += posting.length;
+                }
+                Arrays.sort(candidates, 0, count);
+
+                for (int i = 0; i < count; ) {
+                    int k = candidates[i];
+                    int shared = 0;
+                    while (i < count && candidates[i] == k) {
+                        shared++;
+                        i++;
+                    }
+                    for (int l = prefix; l < listCount; l++) {
+                        if (Arrays.binarySearch(lists[l], k) >= 0) {
+                            shared++;
+                        }
+                    }
+                    if (shared < minShared) {
+                        continue;
+                    }
+                    double similarity = 2.0 * shared / (gramCount + gramCounts[k]);
+                    String keyword = keywords[k];
+                    int allowed = allowedEdits(keyword.length(), maxEdits);
+                    if (similarity < minSimilarity
+                            || Math.abs(keyword.length() - window.length()) > allowed) {
+                        continue;
+                    }
+                    int edits = editDistance(window, keyword, Math.min(allowed, bestEdits));
+                    if (edits < 0) {
+                        continue;
+                    }
+                    if (edits < bestEdits
+                            || (edits == bestEdits && similarity > bestSimilarity)
+                            || (edits == bestEdits && similarity == bestSimilarity && keywordIds[k] < best)) {
+                        best = keywordIds[k];
+                        bestEdits = edits;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    static int allowedEdits(int keywordLength, int maxEdits) {
+        if (keywordLength < MIN_FUZZY_LENGTH) {
+            return 0;
+        }
+        return keywordLength < LONG_KEYWORD ? Math.min(1, maxEdits) : maxEdits;
+    }
+
+    /**
+     * Edit distance (insertions, deletions, substitutions and swaps of neighbours),
+     * or -1 as soon as it must exceed {@code bound}.
+     */
+    static int editDistance(CharSequence a, CharSequence b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return -1;
+        }
+        int[] before = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                char cb = b.charAt(j - 1);
+                int cost = ca == cb ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, row[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    d = Math.min(d, before[j - 2] + 1);
+                }
+                row[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > bound) {
+                return -1;
+            }
+            int[] recycled = before;
+            before = previous;
+            previous = row;
+            row = recycled;
+        }
+        int distance = previous[b.length()];
+        return distance <= bound ? distance : -1;
+    }
+
+    /** Lowercase words separated by single spaces; anything but letters and digits separates. */
+    static String normalize(String text) {
+        if (isNormalized(text)) {
+            return text; // keywords usually are, and keep sharing the automaton's String
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                out.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                out.append(' ');
+                space = true;
+            }
+        }
+        if (space && out.length() > 0) {
+            out.setLength(out.length() - 1);
+        }
+        return out.toString();
+    }
+
+    private static boolean isNormalized(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean word = Character.isLetterOrDigit(c) && !Character.isUpperCase(c);
+            boolean separator = c == ' ' && i > 0 && i < text.length() - 1 && text.charAt(i - 1) != ' ';
+            if (!word && !separator) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Index key of a trigram of a keyword starting with {@code first}. */
+    private static long key(char first, long trigram) {
+        return (long) first << 48 | trigram;
+    }
+
+    /** Slot of {@code key} in the table, or of the empty slot where it would go. */
+    private int slot(long key) {
+        int mask = table.length - 1;
+        int i = (int) (key * 0x9E3779B97F4A7C15L >>> 40) & mask;
+        while (table[i] != 0 && gramKeys[table[i] - 1] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Distinct trigrams of " text ", three chars packed into a long, ascending, written
+     * to {@code into} (at least text.length() long); returns how many.
+     */
+    private static int trigrams(CharSequence text, long[] into) {
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char first = i == 0 ? ' ' : text.charAt(i - 1);
+            char third = i + 1 == n ? ' ' : text.charAt(i + 1);
+            into[i] = (long) first << 32 | (long) text.charAt(i) << 16 | third;
+        }
+        Arrays.sort(into, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || into[i] != into[i - 1]) {
+                into[distinct++] = into[i];
+            }
+        }
+        return distinct;
+    }
+}
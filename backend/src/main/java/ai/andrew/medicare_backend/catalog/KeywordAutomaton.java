@@ -0,0 +1,274 @@
+package ai.andrew.medicare_backend.catalog;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable Aho-Corasick automaton over a fixed set of keywords.
+ *
+ * Built once from the catalog and then shared by every request thread.
+ * Scanning a text is a single left-to-right pass: O(text length + matches),
+ * no matter how many keywords were compiled in.
+ *
+ * Every keyword carries an int payload (for ConditionCatalog: the index of the
+ * first catalog row that lists it). Besides reporting every hit, the automaton
+ * precomputes the smallest payload reachable from each state, so a "first row
+ * wins" lookup never has to walk the suffix chain.
+ *
+ * Transitions are stored in flat, per-state sorted char arrays (binary search),
+ * which keeps memory proportional to the trie size even for big catalogs. Being
+ * flat arrays, the compiled tables also go into a CatalogSnapshot as they are.
+ */
+public final class KeywordAutomaton {
+
+    /** Receives every keyword occurrence found by {@link #scan}. */
+    @FunctionalInterface
+    public interface MatchListener {
+        void onMatch(int keywordId, int endExclusive);
+    }
+
+    private static final int NONE = -1;
+
+    // transitions of state s live in edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1])
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+
+    private final int[] fail;
+    private final int[] output;      // keyword id ending exactly at this state, or NONE
+    private final int[] dictLink;    // nearest state on the fail chain with an output, or NONE
+    private final int[] minPayload;  // smallest payload of any keyword ending here or on the fail chain
+
+    private final String[] keywords;
+    private final int[] payloads;
+    private final int emptyKeywordPayload; // "" is contained in every string
+
+    private KeywordAutomaton(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int[] fail,
+                             int[] output, int[] dictLink, int[] minPayload,
+                             String[] keywords, int[] payloads, int emptyKeywordPayload) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.output = output;
+        this.dictLink = dictLink;
+        this.minPayload = minPayload;
+        this.keywords = keywords;
+        this.payloads = payloads;
+        this.emptyKeywordPayload = emptyKeywordPayload;
+    }
+
+    /**
+     * Compiles the automaton. {@code keywords.get(i)} gets keyword id {@code i}
+     * and payload {@code payloads[i]}; payloads must be non-negative.
+     * Duplicate keywords are allowed, the smallest payload wins.
+     * A payload of {@link Integer#MAX_VALUE} keeps a keyword out of
+     * {@link #minPayload} while still reporting it from {@link #scan}.
+     */
+    public static KeywordAutomaton build(List<String> keywords, int[] payloads) {
+        if (keywords.size() != payloads.length) {
+            throw new IllegalArgumentException("keywords and payloads must have the same size");
+        }
+
+        // 1) plain trie, built with sorted maps so the flattened edges come out ordered
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> ownOutput = new ArrayList<>();
+        children.add(new TreeMap<>());
+        ownOutput.add(NONE);
+        int emptyPayload = Integer.MAX_VALUE;
+
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            if (payloads[id] < 0) {
+                throw new IllegalArgumentException("payloads must be non-negative");
+            }
+            if (keyword.isEmpty()) {
+                emptyPayload = Math.min(emptyPayload, payloads[id]);
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    ownOutput.add(NONE);
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            Integer existing = ownOutput.get(state);
+            if (existing == NONE || payloads[id] < payloads[existing]) {
+                ownOutput.set(state, id);
+            }
+        }
+
+        // 2) flatten edges
+        int states = children.size();
+        int[] edgeStart = new int[states + 1];
+        int edgeCount = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = edgeCount;
+            edgeCount += children.get(s).size();
+        }
+        edgeStart[states] = edgeCount;
+        char[] edgeChars = new char[edgeCount];
+        int[] edgeTargets = new int[edgeCount];
+        for (int s = 0; s < states; s++) {
+            int e = edgeStart[s];
+            for (Map.Entry<Character, Integer> edge : children.get(s).entrySet()) {
+                edgeChars[e] = edge.getKey();
+                edgeTargets[e] = edge.getValue();
+                e++;
+            }
+        }
+
+        int[] output = new int[states];
+        for (int s = 0; s < states; s++) {
+            output[s] = ownOutput.get(s);
+        }
+
+        // 3) failure links, dictionary links and min payloads in BFS order
+        int[] fail = new int[states];
+        int[] dictLink = new int[states];
+        int[] minPayload = new int[states];
+        Arrays.fill(dictLink, NONE);
+        minPayload[0] = Integer.MAX_VALUE;
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            int child = edgeTargets[e];
+            fail[child] = 0;
+            minPayload[child] = output[child] == NONE ? Integer.MAX_VALUE : payloads[output[child]];
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                char c = edgeChars[e];
+                int child = edgeTargets[e];
+
+                int f = fail[state];
+                int target;
+                while ((target = step(edgeStart, edgeChars, edgeTargets, f, c)) == NONE && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = target == NONE ? 0 : target;
+
+                int fs = fail[child];
+                dictLink[child] = output[fs] != NONE ? fs : dictLink[fs];
+                int own = output[child] == NONE ? Integer.MAX_VALUE : payloads[output[child]];
+                minPayload[child] = Math.min(own, minPayload[fs]);
+                queue.add(child);
+            }
+        }
+
+        return new KeywordAutomaton(edgeStart, edgeChars, edgeTargets, fail, output, dictLink,
+                minPayload, keywords.toArray(new String[0]), payloads.clone(),
+                emptyPayload == Integer.MAX_VALUE ? NONE : emptyPayload);
+    }
+
+    /**
+     * Smallest payload among all keywords contained in {@code text},
+     * or -1 when no keyword occurs.
+     */
+    public int minPayload(CharSequence text) {
+        int best = emptyKeywordPayload == NONE ? Integer.MAX_VALUE : emptyKeywordPayload;
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n && best != 0; i++) {
+            state = next(state, text.charAt(i));
+            int candidate = minPayload[state];
+            if (candidate < best) {
+                best = candidate;
+            }
+        }
+        return best == Integer.MAX_VALUE ? NONE : best;
+    }
+
+    /**
+     * Reports every keyword occurrence in {@code text} (overlaps included) in
+     * order of their end position. Empty keywords are not reported.
+     */
+    public void scan(CharSequence text, MatchListener listener) {
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next(state, text.charAt(i));
+            int s = output[state] != NONE ? state : dictLink[state];
+            while (s != NONE) {
+                listener.onMatch(output[s], i + 1);
+                s = dictLink[s];
+            }
+        }
+    }
+
+    /** Writes the compiled tables; {@link #read} restores them without rebuilding. */
+    void write(CatalogSnapshot.Writer out) throws IOException {
+        out.ints(edgeStart);
+        out.chars(edgeChars);
+        out.ints(edgeTargets);
+        out.ints(fail);
+        out.ints(output);
+        out.ints(dictLink);
+        out.ints(minPayload);
+        out.strings(Arrays.asList(keywords));
+        out.ints(payloads);
+        out.writeInt(emptyKeywordPayload);
+    }
+
+    static KeywordAutomaton read(CatalogSnapshot.Reader in) throws IOException {
+        return new KeywordAutomaton(in.ints(), in.chars(), in.ints(), in.ints(), in.ints(), in.ints(), in.ints(),
+                in.strings().toArray(new String[0]), in.ints(), in.readInt());
+    }
+
+    public String keyword(int keywordId) {
+        return keywords[keywordId];
+    }
+
+    public int payload(int keywordId) {
+        return payloads[keywordId];
+    }
+
+    public int keywordCount() {
+        return keywords.length;
+    }
+
+    public int stateCount() {
+        return fail.length;
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            int target = step(edgeStart, edgeChars, edgeTargets, state, c);
+            if (target != NONE) {
+                return target;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static int step(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int state, char c) {
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,24 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * An over-the-counter medication suggestion for a condition.
+ * Older catalog rows use a plain string for "medication"; that string becomes the name.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record Medication(String name, List<String> ingredients, String dosage, List<String> warnings) {
+
+    public Medication {
+        ingredients = ingredients == null ? List.of() : List.copyOf(ingredients);
+        warnings = warnings == null ? List.of() : List.copyOf(warnings);
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static Medication named(String name) {
+        return new Medication(name, null, null, null);
+    }
+}
@@ -0,0 +1,34 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.List;
+
+/**
+ * Warning signs that mean the user should seek care instead of self-treating.
+ * Serialized as the plain list stored under "red_flags".
+ */
+public record RedFlags(List<String> items) {
+
+    public static final RedFlags NONE = new RedFlags(List.of());
+
+    public RedFlags {
+        items = items == null ? List.of() : List.copyOf(items);
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static RedFlags of(List<String> items) {
+        return items == null || items.isEmpty() ? NONE : new RedFlags(items);
+    }
+
+    @JsonValue
+    @Override
+    public List<String> items() {
+        return items;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+}
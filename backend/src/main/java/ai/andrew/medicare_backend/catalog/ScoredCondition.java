@@ -0,0 +1,21 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import java.util.List;
+
+/**
+ * A condition ranked against a user message. Serialized flat: the condition's
+ * own fields plus the score and what in the message produced it.
+ */
+public record ScoredCondition(
+        @JsonUnwrapped Condition condition,
+        double score,
+        List<String> matchedKeywords,
+        List<String> matchedRedFlags) {
+
+    public ScoredCondition {
+        matchedKeywords = List.copyOf(matchedKeywords);
+        matchedRedFlags = List.copyOf(matchedRedFlags);
+    }
+}
@@ -0,0 +1,50 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Locale;
+
+/**
+ * Severity levels used in data.json, ordered from least to most urgent.
+ * Serialized with the same labels the JSON file uses ("mild-moderate", ...).
+ */
+public enum Severity {
+    UNKNOWN("unknown"),
+    MILD("mild"),
+    MILD_MODERATE("mild-moderate"),
+    MODERATE("moderate"),
+    MODERATE_SEVERE("moderate-severe"),
+    SEVERE("severe"),
+    EMERGENCY("emergency");
+
+    private final String label;
+
+    Severity(String label) {
+        this.label = label;
+    }
+
+    @JsonValue
+    public String label() {
+        return label;
+    }
+
+    /** Score multiplier used when ranking matches: more urgent conditions float up. */
+    public double rankingBoost() {
+        return 1.0 + 0.15 * ordinal();
+    }
+
+    @JsonCreator
+    public static Severity fromLabel(String label) {
+        if (label == null) {
+            return UNKNOWN;
+        }
+        String normalized = label.trim().toLowerCase(Locale.ROOT);
+        for (Severity severity : values()) {
+            if (severity.label.equals(normalized)) {
+                return severity;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -1,7 +1,9 @@
 package ai.andrew.medicare_backend.config;
 
+import ai.andrew.medicare_backend.interceptor.RateLimitInterceptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -19,6 +21,8 @@ public class CorsConfig {
                         )
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders(HttpHeaders.RETRY_AFTER,
+                                RateLimitInterceptor.LIMIT_HEADER, RateLimitInterceptor.REMAINING_HEADER)
                         .allowCredentials(true);
             }
         };
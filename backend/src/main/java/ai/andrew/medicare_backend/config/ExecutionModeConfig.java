@@ -0,0 +1,55 @@
+package ai.andrew.medicare_backend.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+/**
+ * Checks and reports which execution mode the app is running in.
+ *
+ * With spring.threads.virtual.enabled=true (needs a Java 21+ runtime) Tomcat handles each
+ * request on its own virtual thread, and so do the blocking OpenAI and LibreTranslate calls
+ * made from it and the tasks on applicationTaskExecutor. The number of chats in flight is
+ * then bounded by openai.http.max-connections rather than by server.tomcat.threads.max.
+ * Spring Boot quietly stays on platform threads when the runtime is older, so startup
+ * fails instead: a deployment sized for virtual threads would not cope on platform ones.
+ *
+ * Pinning audit for the request path (a virtual thread that blocks while holding a
+ * monitor pins its carrier on Java 21):
+ *   OpenAIAdmission  : was synchronized; now a ReentrantLock (contended on every call)
+ *   ChatSessionStore : ReentrantLock
+ *   ConditionService : catalog reads are lock-free; reload takes a ReentrantLock
+ *   EventLog         : lock-free ring buffer; the file is written by its own thread
+ *   caches           : Caffeine only runs cheap loaders under its bin locks; the
+ *                      translation cache holds futures, so no I/O runs inside them
+ *   libraries        : HttpClient 5.2 connection pool, Logback 1.4, Tomcat 10.1 and
+ *                      Reactor's block() use j.u.c locks
+ * Nothing else on the path takes a monitor.
+ */
+@Configuration
+public class ExecutionModeConfig {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModeConfig.class);
+
+    private final boolean virtualThreads;
+
+    public ExecutionModeConfig(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        checkRuntime(virtualThreads, Runtime.version().feature());
+        this.virtualThreads = virtualThreads;
+    }
+
+    static void checkRuntime(boolean virtualThreads, int java) {
+        if (virtualThreads && java < 21) {
+            throw new IllegalStateException("spring.threads.virtual.enabled=true needs a Java 21+ runtime, this is Java "
+                    + java + "; run on Java 21 or turn virtual threads off (VIRTUAL_THREADS=false)");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void report() {
+        logger.info("Execution mode - Threads: {}, Java: {}", virtualThreads ? "virtual" : "platform",
+                Runtime.version().feature());
+    }
+}
@@ -0,0 +1,51 @@
+package ai.andrew.medicare_backend.config;
+
+import ai.andrew.medicare_backend.catalog.CatalogSnapshot;
+import ai.andrew.medicare_backend.catalog.Category;
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.Medication;
+import ai.andrew.medicare_backend.catalog.RedFlags;
+import ai.andrew.medicare_backend.catalog.ScoredCondition;
+import ai.andrew.medicare_backend.catalog.Severity;
+import ai.andrew.medicare_backend.dto.BatchSymptomRequest;
+import ai.andrew.medicare_backend.dto.ChatRequest;
+import ai.andrew.medicare_backend.dto.SymptomRequest;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.util.ClassUtils;
+
+/**
+ * What a GraalVM native image needs beyond what Spring's AOT processing finds itself
+ * (./gradlew -PfastStartup nativeCompile).
+ *
+ * AOT registers the @RequestBody types of controller methods, but not types Jackson only
+ * meets at runtime: the catalog records, read from data.json and written inside the Map
+ * bodies the controllers return; batch requests, read with an ObjectReader; and the
+ * private records the OpenAI and LibreTranslate replies are bound to. The bundled
+ * catalog files are resources, which a native image only contains when listed.
+ */
+public class NativeImageHints implements RuntimeHintsRegistrar {
+
+    /** Private records bound by Jackson, named because they can't be referenced here. */
+    static final String[] PRIVATE_BINDINGS = {
+            "ai.andrew.medicare_backend.service.OpenAIService$SymptomCheckerArgs",
+            "ai.andrew.medicare_backend.service.TranslationService$Json",
+            "ai.andrew.medicare_backend.service.TranslationService$BatchJson",
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        BindingReflectionHintsRegistrar bindings = new BindingReflectionHintsRegistrar();
+        bindings.registerReflectionHints(hints.reflection(),
+                ChatRequest.class, SymptomRequest.class, BatchSymptomRequest.class,
+                Condition.class, ScoredCondition.class, Medication.class, RedFlags.class, Category.class,
+                Severity.class);
+        for (String name : PRIVATE_BINDINGS) {
+            bindings.registerReflectionHints(hints.reflection(), ClassUtils.resolveClassName(name, classLoader));
+        }
+
+        hints.resources().registerPattern("data.json");
+        hints.resources().registerPattern(CatalogSnapshot.RESOURCE);
+    }
+}
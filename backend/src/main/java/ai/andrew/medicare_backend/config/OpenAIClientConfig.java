@@ -0,0 +1,144 @@
+package ai.andrew.medicare_backend.config;
+
+import ai.andrew.medicare_backend.service.OpenAIRetryPolicy;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.common.circuitbreaker.configuration.CircuitBreakerConfigCustomizer;
+import io.netty.channel.ChannelOption;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Shared, pooled HTTP clients for the OpenAI API.
+ *
+ * Connections (and their TLS sessions) are kept alive and reused across requests,
+ * and every hop has an explicit timeout so a stuck upstream can't hold a
+ * Tomcat thread forever. The blocking RestTemplate serves the JSON endpoints;
+ * the non-blocking WebClient relays streamed completions. Both go through the
+ * "openai" circuit breaker, configured under resilience4j.circuitbreaker.instances.openai.
+ */
+@Configuration
+public class OpenAIClientConfig {
+    private static final Logger logger = LoggerFactory.getLogger(OpenAIClientConfig.class);
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient openAiHttpClient(
+            @Value("${openai.http.max-connections:50}") int maxConnections,
+            @Value("${openai.http.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${openai.http.read-timeout:30s}") Duration readTimeout,
+            @Value("${openai.http.pool-acquire-timeout:2s}") Duration poolAcquireTimeout,
+            @Value("${openai.http.keep-alive:60s}") Duration keepAlive) {
+        return pooledClient(maxConnections, connectTimeout, readTimeout, poolAcquireTimeout, keepAlive);
+    }
+
+    @Bean
+    public RestTemplate openAiRestTemplate(CloseableHttpClient openAiHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(openAiHttpClient));
+    }
+
+    @Bean
+    public WebClient openAiWebClient(
+            WebClient.Builder builder,
+            @Value("${openai.http.max-connections:50}") int maxConnections,
+            @Value("${openai.http.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${openai.http.read-timeout:30s}") Duration readTimeout,
+            @Value("${openai.http.pool-acquire-timeout:2s}") Duration poolAcquireTimeout,
+            @Value("${openai.http.keep-alive:60s}") Duration keepAlive) {
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(
+                        streamingClient(maxConnections, connectTimeout, readTimeout, poolAcquireTimeout, keepAlive)))
+                .build();
+    }
+
+    /**
+     * Only failures that mean OpenAI is unwell count against the breaker; a request it
+     * rejects as malformed says nothing about its health.
+     */
+    @Bean
+    public CircuitBreakerConfigCustomizer openAiCircuitBreakerFailures() {
+        return CircuitBreakerConfigCustomizer.of("openai",
+                builder -> builder.recordException(OpenAIRetryPolicy::isUpstreamFailure));
+    }
+
+    @Bean
+    public CircuitBreaker openAiCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        CircuitBreaker breaker = circuitBreakerRegistry.circuitBreaker("openai");
+        breaker.getEventPublisher().onStateTransition(event ->
+                logger.warn("OpenAI circuit breaker - Transition: {}", event.getStateTransition()));
+        return breaker;
+    }
+
+    /**
+     * Builds the pooled client. Public so benchmarks can build the same client without Spring.
+     * All connections go to a single host, so the per-route limit equals the total.
+     */
+    public static CloseableHttpClient pooledClient(int maxConnections, Duration connectTimeout,
+                                                   Duration readTimeout, Duration poolAcquireTimeout,
+                                                   Duration keepAlive) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setTimeToLive(TimeValue.of(Duration.ofMinutes(5)))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .build())
+                .setDefaultSocketConfig(SocketConfig.custom()
+                        .setSoKeepAlive(true)
+                        .setTcpNoDelay(true)
+                        .build())
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolAcquireTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .setKeepAliveStrategy((response, context) -> TimeValue.of(keepAlive))
+                .evictIdleConnections(TimeValue.of(keepAlive))
+                .evictExpiredConnections()
+                // retries are OpenAIRetryPolicy's job, so they stay jittered and budgeted
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    /**
+     * Builds the non-blocking client used for streamed completions. The read timeout
+     * applies between chunks, so a long answer can stream as long as tokens keep coming.
+     */
+    public static reactor.netty.http.client.HttpClient streamingClient(int maxConnections, Duration connectTimeout,
+                                                                       Duration readTimeout, Duration poolAcquireTimeout,
+                                                                       Duration keepAlive) {
+        ConnectionProvider provider = ConnectionProvider.builder("openai")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(poolAcquireTimeout)
+                .maxIdleTime(keepAlive)
+                .evictInBackground(keepAlive)
+                .build();
+        return reactor.netty.http.client.HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(readTimeout);
+    }
+}
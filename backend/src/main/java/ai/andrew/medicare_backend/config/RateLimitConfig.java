@@ -1,24 +1,13 @@
 package ai.andrew.medicare_backend.config;
 
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import org.springframework.context.annotation.Bean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
-import java.time.Duration;
-
+/**
+ * Limits are per client and per endpoint (see RateLimitProperties and RateLimitInterceptor)
+ * rather than one bucket shared by every caller.
+ */
 @Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
 public class RateLimitConfig {
-
-    @Bean
-    public Bucket createNewBucket() {
-        // Allow 100 requests per hour
-        Bandwidth limit = Bandwidth.builder()
-                .capacity(100)
-                .refillGreedy(100, Duration.ofHours(1))
-                .build();
-        return Bucket.builder()
-                .addLimit(limit)
-                .build();
-    }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package ai.andrew.medicare_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rate limits, bound from the ratelimit.* properties.
+ *
+ * @param defaults   limit for any /api path without its own entry
+ * @param endpoints  limits by path below /api (e.g. "chat-combined"); a path also
+ *                   matches everything under it, so chat-combined covers chat-combined/stream
+ * @param clientKey  how callers are told apart, tried in order: api-key (X-API-Key header,
+ *                   only if listed in apiKeys), session (X-Session-Id header, only if it
+ *                   is a live session this server issued), ip (remote address)
+ * @param apiKeys    the API keys api-key accepts; any other X-API-Key is ignored
+ * @param maxClients most client buckets kept in memory; idle ones are dropped first
+ *
+ * Neither api-key nor session is authentication. Anyone holding a listed key shares its
+ * bucket, and anyone can get a new session id from /api/chat-combined, trading one
+ * request from their address's bucket for a fresh bucket. Use them only when the API
+ * sits behind authentication that hands out the keys or sessions; otherwise keep ip.
+ */
+@ConfigurationProperties(prefix = "ratelimit")
+public record RateLimitProperties(Limit defaults,
+                                  Map<String, Limit> endpoints,
+                                  List<String> clientKey,
+                                  Set<String> apiKeys,
+                                  long maxClients) {
+
+    public RateLimitProperties {
+        defaults = defaults != null ? defaults : new Limit(100, Duration.ofHours(1));
+        endpoints = endpoints != null ? Map.copyOf(endpoints) : Map.of();
+        clientKey = clientKey != null && !clientKey.isEmpty() ? List.copyOf(clientKey) : List.of("ip");
+        apiKeys = apiKeys != null ? Set.copyOf(apiKeys) : Set.of();
+        maxClients = maxClients > 0 ? maxClients : 100_000;
+    }
+
+    /** {@code capacity} requests per {@code period}, refilled gradually. */
+    public record Limit(long capacity, Duration period) { }
+}
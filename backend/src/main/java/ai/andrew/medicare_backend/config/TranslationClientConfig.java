@@ -0,0 +1,47 @@
+package ai.andrew.medicare_backend.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking HTTP client for LibreTranslate.
+ *
+ * Every in-flight translation holds one pooled connection, so the pool size is the
+ * limit on concurrent calls to the translator. Calls beyond it wait for a connection
+ * in a bounded queue and fail fast when it is full, instead of piling up on a slow
+ * instance.
+ */
+@Configuration
+public class TranslationClientConfig {
+
+    @Bean
+    public WebClient translationWebClient(
+            WebClient.Builder builder,
+            @Value("${libretranslate.url:https://libretranslate.de}") String baseUrl,
+            @Value("${translation.max-concurrency:20}") int maxConcurrency,
+            @Value("${translation.max-pending:200}") int maxPending,
+            @Value("${translation.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${translation.request-timeout:10s}") Duration requestTimeout) {
+        ConnectionProvider provider = ConnectionProvider.builder("libretranslate")
+                .maxConnections(maxConcurrency)
+                .pendingAcquireMaxCount(maxPending)
+                .pendingAcquireTimeout(requestTimeout)
+                .maxIdleTime(Duration.ofSeconds(60))
+                .build();
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(requestTimeout);
+        return builder
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
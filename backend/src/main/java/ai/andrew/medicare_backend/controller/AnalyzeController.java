@@ -1,14 +1,37 @@
 package ai.andrew.medicare_backend.controller;   // AnalyzeController
 
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.ScoredCondition;
+import ai.andrew.medicare_backend.dto.BatchSymptomRequest;
 import ai.andrew.medicare_backend.dto.SymptomRequest;
 import ai.andrew.medicare_backend.service.ConditionService;
 import ai.andrew.medicare_backend.service.TranslationService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 @RestController
 @RequestMapping("/api")
@@ -19,11 +42,23 @@ public class AnalyzeController {
 
     private final ConditionService conditionService;
     private final TranslationService translator;
+    private final MeterRegistry meterRegistry;
+    private final Map<ResultKey, Counter> results = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final int batchChunkSize;
+
+    /** What the catalog made of one batch item (English answer, ranking if it matched). */
+    private record Diagnosis(Condition hit, List<ScoredCondition> ranked) { }
 
     @Autowired
-    public AnalyzeController(ConditionService conditionService, TranslationService translator) {
+    public AnalyzeController(ConditionService conditionService, TranslationService translator,
+                             MeterRegistry meterRegistry, ObjectMapper objectMapper,
+                             @Value("${analyze.batch.chunk-size:256}") int batchChunkSize) {
         this.conditionService = conditionService;
         this.translator = translator;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
+        this.batchChunkSize = batchChunkSize;
     }
 
     /* ---------- existing /api/analyze (English only) stays here ---------- */
@@ -31,41 +66,190 @@ public class AnalyzeController {
     // ---------------------------------------------------------------------
     //  NEW multilingual endpoint (LibreTranslate + keywordMatch)
     //  URL example:  POST /api/analyze-ml?lang=es
+    //
+    //  Non-blocking end to end: the servlet thread is released while the
+    //  translations run, and each translation falls back to the untranslated
+    //  (English) text when LibreTranslate is slow, so the answer still arrives.
     // ---------------------------------------------------------------------
     @PostMapping("/analyze-ml")
-    public ResponseEntity<?> analyzeMultilingual(
+    public Mono<ResponseEntity<Map<String, Object>>> analyzeMultilingual(
             @RequestBody SymptomRequest req,
             @RequestParam(defaultValue = "en") String lang) {
 
-        // 1) Translate incoming text ➜ English
-        String english = lang.equals("en")
-                ? req.text()
-                : translator.toEnglish(req.text());
+        // 1) Clean the text the same way the chat endpoints do, then translate it ➜ English
+        String text = InputSanitizer.sanitize(req.text());
+        Mono<String> english = lang.equals("en")
+                ? Mono.just(text)
+                : translator.toEnglishAsync(text);
+
+        return english.flatMap(englishText -> {
+            // 2) Keyword diagnosis
+            Condition hit = conditionService.keywordMatch(englishText);
+
+            countResult(hit == null ? "followup" : "answer", lang);
+
+            if (hit == null) {
+                String askEn = ConditionService.FOLLOW_UP_QUESTION;
+                return inUserLanguage(askEn, lang)
+                        .map(ask -> ResponseEntity.ok(Map.<String, Object>of("followup", ask)));
+            }
 
-        // 2) Keyword diagnosis
-        Map<String,Object> hit = conditionService.keywordMatch(english);
+            // Build English answer first
+            String answerEn = hit.answerText();
+            List<ScoredCondition> ranked = conditionService.rankConditions(englishText);
 
-        if (hit == null) {
-            String askEn = "I'm not sure yet—could you describe your symptoms in more detail?";
-            String ask   = lang.equals("en") ? askEn
-                          : translator.fromEnglish(askEn, lang);
-            return ResponseEntity.ok(Map.of("followup", ask));
+            // 3) Translate back if user language ≠ English
+            return inUserLanguage(answerEn, lang)
+                    .map(answer -> ResponseEntity.ok(Map.<String, Object>of("answer", answer, "rankedConditions", ranked)));
+        });
+    }
+
+    // ---------------------------------------------------------------------
+    //  Batch endpoint for bulk triage
+    //  URL:   POST /api/analyze-batch
+    //  Body:  NDJSON, one {"id":"n1","text":"...","lang":"es"} per line,
+    //         or the same objects in one JSON array
+    //  Reply: NDJSON, one line per item in input order:
+    //         {"index":0,"id":"n1","answer":"...","rankedConditions":[...]}
+    //         or {"index":1,"followup":"..."}; malformed input ends the
+    //         stream with {"index":n,"error":"..."}
+    //
+    //  Items are read, analyzed and written analyze.batch.chunk-size at a
+    //  time, so memory stays flat however large the upload is. Within a
+    //  chunk, translation is one LibreTranslate call per language each way
+    //  and matching runs on all cores. A batch is one request as far as the
+    //  rate limit (analyze-batch) is concerned.
+    // ---------------------------------------------------------------------
+    @PostMapping(value = "/analyze-batch",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void analyzeBatch(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        OutputStream out = response.getOutputStream();
+
+        List<BatchSymptomRequest> chunk = new ArrayList<>(batchChunkSize);
+        int index = 0;
+        String error = null;
+        // readValues streams both a root-level array and a sequence of objects
+        try (MappingIterator<BatchSymptomRequest> items =
+                     objectMapper.readerFor(BatchSymptomRequest.class).readValues(body)) {
+            while (items.hasNextValue()) {
+                chunk.add(items.nextValue());
+                if (chunk.size() == batchChunkSize) {
+                    index = analyzeChunk(chunk, index, out);
+                    chunk.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            error = "Malformed batch input: " + e.getOriginalMessage();
+        }
+        index = analyzeChunk(chunk, index, out);
+        if (error != null) {
+            writeLine(out, Map.of("index", index, "error", error));
         }
+        out.flush();
+    }
+
+    /** Analyzes and writes one chunk; returns the index of the next item. */
+    private int analyzeChunk(List<BatchSymptomRequest> chunk, int firstIndex, OutputStream out) throws IOException {
+        int size = chunk.size();
+        if (size == 0) {
+            return firstIndex;
+        }
+        String[] langs = new String[size];
+        String[] texts = new String[size];
+        for (int i = 0; i < size; i++) {
+            String lang = chunk.get(i).lang();
+            langs[i] = lang == null || lang.isBlank() ? "en" : lang.trim().toLowerCase(Locale.ROOT);
+            texts[i] = InputSanitizer.sanitize(chunk.get(i).text());
+        }
+
+        // 1) Every language's texts ➜ English, one call per language
+        String[] english = translateByLanguage(texts, langs, true);
+
+        // 2) Keyword diagnosis, spread over all cores
+        Diagnosis[] diagnoses = new Diagnosis[size];
+        IntStream.range(0, size).parallel().forEach(i -> {
+            Condition hit = conditionService.keywordMatch(english[i]);
+            diagnoses[i] = new Diagnosis(hit, hit == null ? List.of() : conditionService.rankConditions(english[i]));
+        });
+
+        // 3) Answers ➜ each user's language, again one call per language
+        String[] answersEn = new String[size];
+        for (int i = 0; i < size; i++) {
+            Condition hit = diagnoses[i].hit();
+            answersEn[i] = hit == null ? ConditionService.FOLLOW_UP_QUESTION : hit.answerText();
+        }
+        String[] answers = translateByLanguage(answersEn, langs, false);
+
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("index", firstIndex + i);
+            if (chunk.get(i).id() != null) {
+                line.put("id", chunk.get(i).id());
+            }
+            if (diagnoses[i].hit() == null) {
+                line.put("followup", answers[i]);
+            } else {
+                line.put("answer", answers[i]);
+                line.put("rankedConditions", diagnoses[i].ranked());
+            }
+            countResult(diagnoses[i].hit() == null ? "followup" : "answer", langs[i]);
+            writeLine(out, line);
+        }
+        out.flush();
+        return firstIndex + size;
+    }
+
+    /**
+     * texts[i] translated from (toEnglish) or into langs[i], with the texts of each
+     * language sent together. English texts are left as they are.
+     */
+    private String[] translateByLanguage(String[] texts, String[] langs, boolean toEnglish) {
+        Map<String, List<Integer>> byLanguage = new HashMap<>();
+        for (int i = 0; i < texts.length; i++) {
+            if (!langs[i].equals("en")) {
+                byLanguage.computeIfAbsent(langs[i], lang -> new ArrayList<>()).add(i);
+            }
+        }
+        String[] translated = texts.clone();
+        Flux.fromIterable(byLanguage.entrySet())
+                .flatMap(group -> {
+                    List<Integer> positions = group.getValue();
+                    List<String> groupTexts = positions.stream().map(i -> texts[i]).toList();
+                    return (toEnglish
+                            ? translator.translateAllAsync(groupTexts, group.getKey(), "en")
+                            : translator.translateAllAsync(groupTexts, "en", group.getKey()))
+                            .doOnNext(results -> {
+                                for (int k = 0; k < positions.size(); k++) {
+                                    translated[positions.get(k)] = results.get(k);
+                                }
+                            });
+                })
+                .blockLast();
+        return translated;
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> line) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(line));
+        out.write('\n');
+    }
+
+    // analyze.results{result, language}: how often each language gets an answer vs. a follow-up
+    private void countResult(String result, String lang) {
+        results.computeIfAbsent(new ResultKey(result, TranslationService.languageTag(lang)),
+                        key -> Counter.builder("analyze.results")
+                                .description("Multilingual analyses answered or sent back for more detail")
+                                .tag("result", key.result())
+                                .tag("language", key.language())
+                                .register(meterRegistry))
+                .increment();
+    }
+
+    private record ResultKey(String result, String language) { }
 
-        // Build English answer first
-        String answerEn = """
-                Condition: %s
-                Medication: %s
-                Advice: %s
-                """.formatted(
-                hit.get("condition"),
-                hit.get("medication"),
-                hit.get("advice"));
-
-        // 3) Translate back if user language ≠ English
-        String answer = lang.equals("en") ? answerEn
-                        : translator.fromEnglish(answerEn, lang);
-
-        return ResponseEntity.ok(Map.of("answer", answer));
+    private Mono<String> inUserLanguage(String english, String lang) {
+        return lang.equals("en") ? Mono.just(english) : translator.fromEnglishAsync(english, lang);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package ai.andrew.medicare_backend.controller;
+
+import ai.andrew.medicare_backend.catalog.Category;
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.Medication;
+import ai.andrew.medicare_backend.catalog.Severity;
+import ai.andrew.medicare_backend.service.ConditionService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * CatalogController exposes read-only lookups over the condition catalog.
+ * The candidate list always comes from a prebuilt index in ConditionCatalog;
+ * extra filters only narrow that (small) list down.
+ */
+@RestController
+@RequestMapping("/api")
+public class CatalogController {
+
+    private final ConditionService conditionService;
+
+    public CatalogController(ConditionService conditionService) {
+        this.conditionService = conditionService;
+    }
+
+    /**
+     * GET /api/conditions?category=respiratory&severity=mild&medication=...&ingredient=...
+     * All filters are optional and combined with AND. Names are matched case-insensitively.
+     */
+    @GetMapping("/conditions")
+    public ResponseEntity<List<Condition>> conditions(
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String medication,
+            @RequestParam(required = false) String ingredient) {
+
+        // start from the most selective index that was asked for
+        List<Condition> candidates;
+        if (ingredient != null) {
+            candidates = conditionService.findByIngredient(ingredient);
+        } else if (medication != null) {
+            candidates = conditionService.findByMedication(medication);
+        } else if (category != null) {
+            candidates = conditionService.findByCategory(category);
+        } else if (severity != null) {
+            candidates = conditionService.findBySeverity(severity);
+        } else {
+            candidates = conditionService.catalog().conditions();
+        }
+
+        Stream<Condition> result = candidates.stream();
+        if (medication != null) {
+            result = result.filter(c -> c.medications().stream()
+                    .map(Medication::name)
+                    .anyMatch(medication.trim()::equalsIgnoreCase));
+        }
+        if (category != null) {
+            Category wanted = Category.of(category);
+            result = result.filter(c -> c.category().equals(wanted));
+        }
+        if (severity != null) {
+            Severity wanted = Severity.fromLabel(severity);
+            result = result.filter(c -> c.severity() == wanted);
+        }
+        return ResponseEntity.ok(result.toList());
+    }
+
+    /**
+     * GET /api/conditions/categories
+     */
+    @GetMapping("/conditions/categories")
+    public ResponseEntity<List<Category>> categories() {
+        return ResponseEntity.ok(conditionService.catalog().categories());
+    }
+}
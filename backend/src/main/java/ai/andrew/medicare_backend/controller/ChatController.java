@@ -1,22 +1,55 @@
 package ai.andrew.medicare_backend.controller;
 
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.ScoredCondition;
 import ai.andrew.medicare_backend.dto.ChatRequest;
+import ai.andrew.medicare_backend.events.EventLog;
+import ai.andrew.medicare_backend.service.ChatSessionStore;
+import ai.andrew.medicare_backend.service.ChatSessionStore.Turn;
+import ai.andrew.medicare_backend.service.OpenAIAdmission;
 import ai.andrew.medicare_backend.service.OpenAIService;
+import ai.andrew.medicare_backend.service.OpenAIService.ChatReply;
 import ai.andrew.medicare_backend.service.ConditionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.time.Duration;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
 
 /**
  * ChatController handles chat endpoints for the Medicare AI chatbot.
  * It uses OpenAIService to get AI responses from OpenAI GPT-3.5 Turbo.
+ * Each stage of a chat (sanitize, match, rank, waiting on the AI) is timed as
+ * chat.stage, tagged by endpoint and stage.
+ * Calls that OpenAIAdmission sheds under load are answered with 503 and Retry-After.
+ * Every chat request and its local match are recorded in the EventLog under the
+ * session id (request: status, outcome and duration), off the request thread; only
+ * unexpected errors are logged here.
  */
 @RestController
 @RequestMapping("/api")
@@ -25,28 +58,104 @@ public class ChatController {
     
     private final OpenAIService openaiService;
     private final ConditionService conditionService;
+    private final ChatSessionStore sessionStore;
+    private final AsyncTaskExecutor taskExecutor;
+    private final Duration combinedDeadline;
+    private final MeterRegistry meterRegistry;
+    private final EventLog events;
+    private final Map<StageKey, Timer> stageTimers = new ConcurrentHashMap<>();
     
     private static final String MEDICAL_DISCLAIMER = 
         "IMPORTANT MEDICAL DISCLAIMER: This information is for educational purposes only and " +
         "does not constitute medical advice. Always consult with a qualified healthcare " +
         "professional before making any medical decisions. In case of emergency, call 911 immediately.";
 
-    // Inject the OpenAIService and ConditionService
-    public ChatController(OpenAIService openaiService, ConditionService conditionService) {
+    private static final String AI_TOO_SLOW =
+        "The AI assistant is taking longer than usual. Here is what our symptom checker found; " +
+        "please ask again in a moment for the full answer.";
+
+    private static final String AI_BUSY =
+        "The AI assistant is busy with other requests right now. Please try again in a few seconds. " +
+        "If this is an emergency, call 911 immediately.";
+
+    // Inject the OpenAIService and ConditionService, the session store, plus the executor the OpenAI call runs on
+    public ChatController(OpenAIService openaiService, ConditionService conditionService,
+                          ChatSessionStore sessionStore,
+                          @Qualifier("applicationTaskExecutor") AsyncTaskExecutor taskExecutor,
+                          @Value("${chat.combined.deadline:20s}") Duration combinedDeadline,
+                          MeterRegistry meterRegistry,
+                          EventLog events) {
         this.openaiService = openaiService;
         this.conditionService = conditionService;
+        this.sessionStore = sessionStore;
+        this.taskExecutor = taskExecutor;
+        this.combinedDeadline = combinedDeadline;
+        this.meterRegistry = meterRegistry;
+        this.events = events;
     }
     
+    private <T> T timed(String endpoint, String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            recordStage(endpoint, stage, start);
+        }
+    }
+
+    private void recordStage(String endpoint, String stage, long startNanos) {
+        stageTimers.computeIfAbsent(new StageKey(endpoint, stage), key -> Timer.builder("chat.stage")
+                        .description("Time spent in each stage of a chat request")
+                        .tag("endpoint", key.endpoint())
+                        .tag("stage", key.stage())
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private record StageKey(String endpoint, String stage) { }
+
     /**
-     * Input sanitization helper method
+     * Records how the request ended and hands back its response.
      */
-    private String sanitizeInput(String input) {
-        if (input == null) return "";
-        
-        return input.trim()
-                   .replaceAll("<script.*?>.*?</script>", "")
-                   .replaceAll("<.*?>", "")
-                   .substring(0, Math.min(input.length(), 1000)); // Limit to 1000 chars
+    private <T> ResponseEntity<T> recorded(String sessionId, String endpoint, String outcome, long startNanos,
+                                           ResponseEntity<T> response) {
+        events.request(sessionId, endpoint, response.getStatusCode().value(), outcome, System.nanoTime() - startNanos);
+        return response;
+    }
+
+    /**
+     * Starts the OpenAI call on the task executor. When the executor is saturated the call
+     * runs right here instead, which only loses the overlap.
+     */
+    private Future<ChatReply> submitChat(String message, Condition match, List<Turn> history, boolean useCache,
+                                         String sessionId) {
+        Callable<ChatReply> call = () -> openaiService.chat(message, match, history, useCache, sessionId);
+        try {
+            return taskExecutor.submit(call);
+        } catch (TaskRejectedException e) {
+            FutureTask<ChatReply> inline = new FutureTask<>(call);
+            inline.run();
+            return inline;
+        }
+    }
+
+    /**
+     * 503 for a call shed by admission control; Retry-After says when to come back.
+     */
+    private static ResponseEntity.BodyBuilder overloaded(OpenAIAdmission.Rejected shed) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, shed.retryAfter().toSeconds())));
+    }
+
+    /**
+     * A client sending "Cache-Control: no-cache" (or no-store) wants a fresh answer from OpenAI.
+     */
+    private static boolean allowsCachedReply(String cacheControl) {
+        if (cacheControl == null) {
+            return true;
+        }
+        String directives = cacheControl.toLowerCase();
+        return !directives.contains("no-cache") && !directives.contains("no-store");
     }
 
     /**
@@ -54,56 +163,95 @@ public class ChatController {
      * Accepts a validated chat request and returns the AI's response.
      */
     @PostMapping("/chat-hf")
-    public ResponseEntity<Map<String, String>> chatWithOpenAI(@Valid @RequestBody ChatRequest request) {
+    public ResponseEntity<Map<String, String>> chatWithOpenAI(
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        long start = System.nanoTime();
         try {
-            String response = openaiService.getChatResponse(request.getMessage());
-            return ResponseEntity.ok(Map.of("response", response));
+            String message = InputSanitizer.sanitize(request.getMessage());
+            if (message.isEmpty()) {
+                return recorded(null, "chat-hf", "empty", start,
+                    ResponseEntity.badRequest().body(Map.of("error", "Message cannot be empty")));
+            }
+            String response = openaiService.getChatResponse(message, allowsCachedReply(cacheControl));
+            return recorded(null, "chat-hf", "ok", start, ResponseEntity.ok(Map.of("response", response)));
+        } catch (OpenAIAdmission.Rejected shed) {
+            return recorded(null, "chat-hf", "shed", start, overloaded(shed).body(Map.of("error", AI_BUSY)));
         } catch (Exception e) {
-            return ResponseEntity.internalServerError()
-                .body(Map.of("error", "Failed to process request: " + e.getMessage()));
+            return recorded(null, "chat-hf", "error", start, ResponseEntity.internalServerError()
+                .body(Map.of("error", "Failed to process request: " + e.getMessage())));
         }
     }
 
     /**
      * POST /api/chat-combined
      * Returns both the conversational AI response and the symptom checker result.
+     * The message is matched locally once; the OpenAI call then runs on the task executor
+     * while ranking happens here. If OpenAI hasn't answered by chat.combined.deadline, the
+     * response goes out without it ("partial": true) rather than holding the client.
+     * Sending back the returned sessionId continues the conversation: earlier turns go to
+     * OpenAI with the new message, and only answers the client actually received are kept.
      */
     @PostMapping("/chat-combined")
-    public ResponseEntity<Map<String, Object>> chatCombined(@Valid @RequestBody ChatRequest request) {
-        String sessionId = UUID.randomUUID().toString();
+    public ResponseEntity<Map<String, Object>> chatCombined(
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        long start = System.nanoTime();
+        String sessionId = null; // resolved once the message is known to be usable
         
         try {
-            // Input validation and sanitization
-            if (request.getMessage() == null || request.getMessage().trim().isEmpty()) {
-                logger.warn("Empty message received - SessionId: {}", sessionId);
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Message cannot be empty"));
+            // Input sanitization and validation (a message of nothing but markup is empty too)
+            String sanitizedMessage = timed("chat-combined", "sanitize", () -> InputSanitizer.sanitize(request.getMessage()));
+            if (sanitizedMessage.isEmpty()) {
+                return recorded(null, "chat-combined", "empty", start, ResponseEntity.badRequest()
+                    .body(Map.of("error", "Message cannot be empty")));
             }
+            sessionId = sessionStore.resolve(request.getSessionId());
             
-            String sanitizedMessage = sanitizeInput(request.getMessage());
-            logger.info("Chat request received - SessionId: {}, MessageLength: {}", 
-                       sessionId, sanitizedMessage.length());
-            
-            // Get AI response with timeout handling
+            long deadline = start + combinedDeadline.toNanos();
+
+            // Match locally once: it is the OpenAI context and the symptom result
+            Condition match = timed("chat-combined", "match", () -> conditionService.keywordMatch(sanitizedMessage));
+            events.match(sessionId, "chat-combined", match != null ? match.name() : null);
+
+            // Ask OpenAI in the background while the rest is worked out here
+            boolean useCache = allowsCachedReply(cacheControl);
+            Future<ChatReply> aiCall = submitChat(sanitizedMessage, match, sessionStore.history(sessionId), useCache,
+                    sessionId);
+
+            // Only include symptom result if we have meaningful data
+            Condition symptomResult = match != null && match.hasGuidance() ? match : null;
+            List<ScoredCondition> rankedConditions =
+                    timed("chat-combined", "rank", () -> conditionService.rankConditions(sanitizedMessage));
+
+            // Get AI response, waiting no longer than what is left of the deadline
             String aiResponse;
+            boolean partial = false;
+            long waitStart = System.nanoTime();
             try {
-                aiResponse = openaiService.getChatResponse(sanitizedMessage);
-            } catch (Exception aiException) {
+                ChatReply reply = aiCall.get(Math.max(0, deadline - waitStart), TimeUnit.NANOSECONDS);
+                aiResponse = reply.text();
+                if (reply.answered()) {
+                    sessionStore.record(sessionId, sanitizedMessage, aiResponse);
+                }
+            } catch (TimeoutException timeout) {
+                // the call carries on and caches its reply, so asking again soon is quick;
+                // the session doesn't keep an answer the client never saw
+                aiResponse = AI_TOO_SLOW;
+                partial = true;
+            } catch (ExecutionException aiException) {
+                if (aiException.getCause() instanceof OpenAIAdmission.Rejected shed) {
+                    return recorded(sessionId, "chat-combined", "shed", start,
+                        overloaded(shed).body(Map.of("error", AI_BUSY)));
+                }
+                // chat() turns OpenAI failures into replies, so this is something else going wrong
                 logger.error("OpenAI service error - SessionId: {}, Error: {}", 
-                           sessionId, aiException.getMessage());
-                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
-                    .body(Map.of("error", "AI service temporarily unavailable. Please try again in a moment."));
-            }
-            
-            // Get symptom analysis
-            Map<String, Object> symptomResult = conditionService.keywordMatch(sanitizedMessage);
-            
-            // Only include symptom result if we have meaningful data
-            if (symptomResult == null || 
-                (symptomResult.get("condition") == null && 
-                 symptomResult.get("medication") == null && 
-                 symptomResult.get("advice") == null)) {
-                symptomResult = null;
+                           sessionId, aiException.getCause().getMessage());
+                return recorded(sessionId, "chat-combined", "error", start, ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "AI service temporarily unavailable. Please try again in a moment.")));
+            } finally {
+                // only what is left after matching and ranking, i.e. what the AI adds to latency
+                recordStage("chat-combined", "ai_wait", waitStart);
             }
 
             // Create response with AI response, symptom result, and disclaimer
@@ -111,23 +259,112 @@ public class ChatController {
             response.put("aiResponse", aiResponse != null ? aiResponse : "I'm sorry, I couldn't generate a response at this time.");
             response.put("disclaimer", MEDICAL_DISCLAIMER);
             response.put("sessionId", sessionId);
+            if (partial) {
+                response.put("partial", true);
+            }
             
             if (symptomResult != null) {
                 response.put("symptomResult", symptomResult);
             }
+            if (!rankedConditions.isEmpty()) {
+                response.put("rankedConditions", rankedConditions);
+            }
             
-            logger.info("Chat response sent - SessionId: {}, Success: true", sessionId);
-            return ResponseEntity.ok(response);
+            return recorded(sessionId, "chat-combined", partial ? "partial" : "ok", start, ResponseEntity.ok(response));
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return recorded(sessionId, "chat-combined", "interrupted", start, ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("error", "AI service temporarily unavailable. Please try again in a moment.")));
+
         } catch (IllegalArgumentException e) {
-            logger.warn("Invalid input - SessionId: {}, Error: {}", sessionId, e.getMessage());
-            return ResponseEntity.badRequest()
-                .body(Map.of("error", "Invalid input: " + e.getMessage()));
+            return recorded(sessionId, "chat-combined", "invalid", start, ResponseEntity.badRequest()
+                .body(Map.of("error", "Invalid input: " + e.getMessage())));
                 
         } catch (Exception e) {
             logger.error("Unexpected error - SessionId: {}, Error: {}", sessionId, e.getMessage(), e);
-            return ResponseEntity.internalServerError()
-                .body(Map.of("error", "An unexpected error occurred. Please try again later."));
+            return recorded(sessionId, "chat-combined", "error", start, ResponseEntity.internalServerError()
+                .body(Map.of("error", "An unexpected error occurred. Please try again later.")));
+        }
+    }
+
+    /**
+     * POST /api/chat-combined/stream
+     * Same inputs as /chat-combined, answered as Server-Sent Events:
+     *   event "symptoms" : symptomResult, rankedConditions, disclaimer and sessionId (sent immediately)
+     *   event "delta"    : {"content": "..."} for each piece of the AI response as OpenAI streams it
+     *   event "done"     : {"sessionId": "..."} once the response is complete (and kept in the session)
+     *   event "error"    : {"error": "..."} if the AI service fails mid-stream or is too busy
+     * A message that is empty once sanitized gets a lone "error" event, without a session
+     * or a call to OpenAI, the stream's equivalent of /chat-combined's 400.
+     * No servlet thread is held while waiting on OpenAI. The request event is recorded when
+     * the stream ends, with outcome ok, shed, error or cancelled (the client went away).
+     */
+    @PostMapping(value = "/chat-combined/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatCombinedStream(@Valid @RequestBody ChatRequest request) {
+        long start = System.nanoTime();
+        String sanitizedMessage = timed("chat-stream", "sanitize", () -> InputSanitizer.sanitize(request.getMessage()));
+        if (sanitizedMessage.isEmpty()) {
+            events.request(null, "chat-stream", 200, "empty", System.nanoTime() - start);
+            return Flux.just(event("error", Map.of("error", "Message cannot be empty")));
         }
+        String sessionId = sessionStore.resolve(request.getSessionId());
+
+        // Local matching is instant, so it goes out as the first event
+        Condition symptomResult = timed("chat-stream", "match", () -> conditionService.keywordMatch(sanitizedMessage));
+        events.match(sessionId, "chat-stream", symptomResult != null ? symptomResult.name() : null);
+        if (symptomResult != null && !symptomResult.hasGuidance()) {
+            symptomResult = null;
+        }
+        List<ScoredCondition> rankedConditions =
+                timed("chat-stream", "rank", () -> conditionService.rankConditions(sanitizedMessage));
+
+        Map<String, Object> first = new HashMap<>();
+        first.put("disclaimer", MEDICAL_DISCLAIMER);
+        first.put("sessionId", sessionId);
+        if (symptomResult != null) {
+            first.put("symptomResult", symptomResult);
+        }
+        if (!rankedConditions.isEmpty()) {
+            first.put("rankedConditions", rankedConditions);
+        }
+
+        StringBuilder answer = new StringBuilder();
+        boolean[] fallback = {false};
+        Flux<ServerSentEvent<Object>> deltas = openaiService
+                .streamChatResponse(sanitizedMessage, symptomResult, sessionStore.history(sessionId), sessionId)
+                .doOnNext(reply -> {
+                    answer.append(reply.text());
+                    fallback[0] |= !reply.answered();
+                })
+                .doOnComplete(() -> {
+                    // like /chat-combined, the session keeps only answers OpenAI gave
+                    if (answer.length() > 0 && !fallback[0]) {
+                        sessionStore.record(sessionId, sanitizedMessage, answer.toString());
+                    }
+                })
+                .map(reply -> event("delta", Map.of("content", reply.text())));
+
+        String[] outcome = {"ok"};
+        return Flux.concat(
+                    Flux.just(event("symptoms", first)),
+                    deltas,
+                    Flux.just(event("done", Map.of("sessionId", sessionId))))
+                .onErrorResume(e -> {
+                    if (e instanceof OpenAIAdmission.Rejected) {
+                        // the symptoms event has gone out already, so no 503 here
+                        outcome[0] = "shed";
+                        return Flux.just(event("error", Map.of("error", AI_BUSY)));
+                    }
+                    outcome[0] = "error";
+                    return Flux.just(event("error",
+                            Map.of("error", "AI service temporarily unavailable. Please try again in a moment.")));
+                })
+                .doFinally(signal -> events.request(sessionId, "chat-stream", 200,
+                        signal == SignalType.CANCEL ? "cancelled" : outcome[0], System.nanoTime() - start));
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.<Object>builder(data).event(name).build();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package ai.andrew.medicare_backend.controller;
+
+/**
+ * Cleans user text before it is matched, translated or sent to OpenAI.
+ *
+ * One left-to-right pass over the input: surrounding whitespace is trimmed,
+ * {@code <script>...</script>} blocks are dropped with their content, any other
+ * {@code <...>} tag is dropped, and the result is cut at {@link #MAX_LENGTH}
+ * characters. A {@code <} with no {@code >} after it on the same line is ordinary
+ * text ("pain < 5") and is kept.
+ *
+ * Most messages contain none of this, so text that needs no change is returned as
+ * the same String instance without allocating anything.
+ */
+public final class InputSanitizer {
+
+    /** Longest text handed on, in chars (ChatRequest already rejects longer messages). */
+    public static final int MAX_LENGTH = 1000;
+
+    private static final String SCRIPT_OPEN = "<script";
+    private static final String SCRIPT_CLOSE = "</script";
+
+    private InputSanitizer() {
+    }
+
+    /** The cleaned text; never null ("" for null input). */
+    public static String sanitize(String input) {
+        if (input == null) {
+            return "";
+        }
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int firstTag = input.indexOf('<', start);
+        if (firstTag < 0 || firstTag >= end) {
+            // nothing to strip: at most a trim and the length cap
+            return input.substring(start, cut(input, start, Math.min(end, start + MAX_LENGTH)));
+        }
+
+        char[] out = new char[Math.min(end - start, MAX_LENGTH)];
+        int length = 0;
+        int i = start;
+        while (i < end && length < out.length) {
+            char c = input.charAt(i);
+            if (c == '<') {
+                int skipTo = skipMarkup(input, i, end);
+                if (skipTo > i) {
+                    i = skipTo;
+                    continue;
+                }
+            }
+            if (length > 0 || c > ' ') { // text left of a stripped tag may start with whitespace
+                out[length++] = c;
+            }
+            i++;
+        }
+        if (length == out.length && Character.isHighSurrogate(out[length - 1])) {
+            length--; // don't leave half of a character at the cap
+        }
+        while (length > 0 && out[length - 1] <= ' ') {
+            length--;
+        }
+        return new String(out, 0, length);
+    }
+
+    /**
+     * Where the text resumes after the markup starting at {@code at} (a '<'), or
+     * {@code at} itself if this '<' doesn't open a tag.
+     */
+    private static int skipMarkup(String input, int at, int end) {
+        int close = tagEnd(input, at, end);
+        if (close < 0) {
+            return at;
+        }
+        if (!input.regionMatches(true, at, SCRIPT_OPEN, 0, SCRIPT_OPEN.length())) {
+            return close + 1;
+        }
+        // the script's content goes too, up to and including its closing tag
+        // (or to the end of the text, if it never closes)
+        for (int i = close + 1; i < end; i++) {
+            if (input.charAt(i) == '<' && input.regionMatches(true, i, SCRIPT_CLOSE, 0, SCRIPT_CLOSE.length())) {
+                int scriptEnd = tagEnd(input, i, end);
+                if (scriptEnd >= 0) {
+                    return scriptEnd + 1;
+                }
+            }
+        }
+        return end;
+    }
+
+    /** Index of the '>' closing the tag opened at {@code at}, or -1 if the line ends first. */
+    private static int tagEnd(String input, int at, int end) {
+        for (int i = at + 1; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '>') {
+                return i;
+            }
+            if (c == '\n' || c == '\r') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /** {@code end}, moved back one if it would split a surrogate pair. */
+    private static int cut(String input, int start, int end) {
+        return end > start && end < input.length() && Character.isHighSurrogate(input.charAt(end - 1))
+                ? end - 1 : end;
+    }
+}
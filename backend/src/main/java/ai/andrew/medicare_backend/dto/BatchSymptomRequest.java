@@ -0,0 +1,7 @@
+package ai.andrew.medicare_backend.dto;
+
+/**
+ * One symptom note in a batch sent to /api/analyze-batch.
+ * id is optional and echoed back; lang defaults to "en".
+ */
+public record BatchSymptomRequest(String id, String text, String lang) { }
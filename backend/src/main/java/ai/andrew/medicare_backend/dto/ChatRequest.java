@@ -8,6 +8,10 @@ public class ChatRequest {
     @Size(min = 1, max = 1000, message = "Message must be between 1 and 1000 characters")
     private String message;
 
+    // Returned by /chat-combined; send it back to continue the conversation
+    @Size(max = 64, message = "Session id must be at most 64 characters")
+    private String sessionId;
+
     public String getMessage() {
         return message;
     }
@@ -15,4 +19,12 @@ public class ChatRequest {
     public void setMessage(String message) {
         this.message = message;
     }
-} 
\ No newline at end of file
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+}
@@ -0,0 +1,343 @@
+package ai.andrew.medicare_backend.events;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured event log for request, match and upstream outcomes, written as JSON lines
+ * by a background thread so request threads never wait on the disk.
+ *
+ * Recording an event copies its fields into a preallocated slot of a ring buffer of
+ * buffer-size slots (no allocation, no lock, no I/O). When the buffer is full the event
+ * is dropped and counted (events.dropped) rather than slowing the request down. The
+ * writer thread drains up to batch-size events at a time, writes them to {@code file}
+ * and flushes once per batch; when there is nothing to write it checks again every
+ * flush-interval. The file rotates at max-file-size: events.jsonl becomes
+ * events.jsonl.1, and so on up to max-files.
+ *
+ * Every line has "ts" and "type" (request, match or upstream) and, where known,
+ * "session", so one conversation can be followed through the file, e.g.:
+ *
+ *   {"ts":"...","type":"request","session":"3f2a...","name":"chat-combined","status":200,"outcome":"partial","ms":20004.1}
+ *
+ * Metrics: events.written, events.dropped and events.backlog (recorded, not yet written).
+ */
+@Component
+public class EventLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+
+    private static final JsonFactory LINES = new JsonFactoryBuilder()
+            .rootValueSeparator((String) null)
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    enum Type {
+        REQUEST("request"), MATCH("match"), UPSTREAM("upstream");
+
+        final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+    }
+
+    /** One event; slots are reused, so fields are overwritten rather than allocated. */
+    private static final class Slot {
+        long timeMillis;
+        Type type;
+        String session;
+        String name;
+        String outcome;
+        int status;
+        long durationNanos;
+        String condition;
+        Throwable error;
+    }
+
+    private final boolean enabled;
+    private final Path file;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    private final Slot[] slots;
+    private final int mask;
+    // published.get(i) == seq once the event with sequence seq is fully written to slots[i]
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();  // next sequence to claim
+    private final AtomicLong tail = new AtomicLong();  // next sequence to write
+
+    private final Counter written;
+    private final Counter dropped;
+
+    private volatile boolean running;
+    private Thread writer;
+    private FileOutputStream fileOut;
+    private JsonGenerator json;
+
+    public EventLog(MeterRegistry meterRegistry,
+                    @Value("${events.enabled:true}") boolean enabled,
+                    @Value("${events.file:logs/events.jsonl}") String file,
+                    @Value("${events.buffer-size:8192}") int bufferSize,
+                    @Value("${events.batch-size:256}") int batchSize,
+                    @Value("${events.flush-interval:200ms}") Duration flushInterval,
+                    @Value("${events.max-file-size:50MB}") DataSize maxFileSize,
+                    @Value("${events.max-files:5}") int maxFiles) {
+        this.enabled = enabled;
+        this.file = Path.of(file);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxFileBytes = maxFileSize.toBytes();
+        this.maxFiles = maxFiles;
+
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+
+        this.written = Counter.builder("events.written")
+                .description("Structured events written to the event log")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("events.dropped")
+                .description("Structured events dropped because the buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("events.backlog", this, EventLog::backlog)
+                .description("Structured events recorded but not yet written")
+                .register(meterRegistry);
+    }
+
+    /** A request answered with {@code status}; {@code outcome} says more where the status can't (e.g. partial). */
+    public void request(String session, String endpoint, int status, String outcome, long durationNanos) {
+        record(Type.REQUEST, session, endpoint, outcome, status, durationNanos, null, null);
+    }
+
+    /** The local symptom match of a message; {@code match} is the condition's name, or null for none. */
+    public void match(String session, String endpoint, String match) {
+        record(Type.MATCH, session, endpoint, match == null ? "miss" : "hit", 0, 0, match, null);
+    }
+
+    /** How a call to an upstream service ended; {@code failure} is null unless it failed. */
+    public void upstream(String session, String service, String outcome, long durationNanos, Throwable failure) {
+        record(Type.UPSTREAM, session, service, outcome, 0, durationNanos, null, failure);
+    }
+
+    private void record(Type type, String session, String name, String outcome, int status, long durationNanos,
+                        String condition, Throwable error) {
+        if (!enabled) {
+            return;
+        }
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail.get() >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+
+        Slot slot = slots[(int) seq & mask];
+        slot.timeMillis = System.currentTimeMillis();
+        slot.type = type;
+        slot.session = session;
+        slot.name = name;
+        slot.outcome = outcome;
+        slot.status = status;
+        slot.durationNanos = durationNanos;
+        slot.condition = condition;
+        slot.error = error;
+        published.lazySet((int) seq & mask, seq);
+    }
+
+    long backlog() {
+        return head.get() - tail.get();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        open();
+        running = true;
+        writer = new Thread(this::drainLoop, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Writes what is left in the buffer and closes the file. */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        writer = null;
+    }
+
+    private void drainLoop() {
+        try {
+            while (true) {
+                boolean stopping = !running;
+                int count = writeBatch();
+                if (count == 0) {
+                    if (stopping) {
+                        break;
+                    }
+                    LockSupport.parkNanos(flushIntervalNanos);
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /** Writes and flushes up to batch-size published events; returns how many. */
+    private int writeBatch() {
+        long next = tail.get();
+        int count = 0;
+        try {
+            while (count < batchSize && published.get((int) next & mask) == next) {
+                Slot slot = slots[(int) next & mask];
+                if (json != null) {
+                    write(slot);
+                }
+                slot.error = null; // don't keep a stack trace alive until the slot comes round again
+                next++;
+                count++;
+                tail.lazySet(next);
+            }
+            if (count > 0 && json != null) {
+                json.flush();
+                written.increment(count);
+                if (fileOut.getChannel().position() >= maxFileBytes) {
+                    rotate();
+                }
+            }
+        } catch (IOException e) {
+            // the buffered events are lost, the requests are not; carry on with a fresh file
+            logger.warn("Event log write failed, reopening - File: {}, Error: {}", file, e.getMessage());
+            close();
+            try {
+                open();
+            } catch (IOException reopen) {
+                // from here on events are drained and discarded, so the buffer never fills up
+                logger.warn("Event log unavailable - File: {}, Error: {}", file, reopen.getMessage());
+            }
+        }
+        return count;
+    }
+
+    private void write(Slot slot) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("ts", Instant.ofEpochMilli(slot.timeMillis).toString());
+        json.writeStringField("type", slot.type.label);
+        if (slot.session != null) {
+            json.writeStringField("session", slot.session);
+        }
+        json.writeStringField("name", slot.name);
+        if (slot.status != 0) {
+            json.writeNumberField("status", slot.status);
+        }
+        if (slot.outcome != null) {
+            json.writeStringField("outcome", slot.outcome);
+        }
+        if (slot.condition != null) {
+            json.writeStringField("condition", slot.condition);
+        }
+        if (slot.durationNanos > 0) {
+            json.writeNumberField("ms", Math.round(slot.durationNanos / 100_000.0) / 10.0);
+        }
+        if (slot.error != null) {
+            json.writeStringField("error", slot.error.getClass().getName());
+            if (slot.error.getMessage() != null) {
+                json.writeStringField("message", slot.error.getMessage());
+            }
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    /** events.jsonl -> events.jsonl.1 -> ... -> events.jsonl.{max-files}, then a new events.jsonl. */
+    private void rotate() throws IOException {
+        close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path older = rotated(i);
+            if (Files.exists(older)) {
+                Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles >= 1) {
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(file);
+        }
+        open();
+    }
+
+    private Path rotated(int n) {
+        return file.resolveSibling(file.getFileName() + "." + n);
+    }
+
+    private void open() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        fileOut = new FileOutputStream(file.toFile(), true);
+        json = LINES.createGenerator(new BufferedOutputStream(fileOut, 64 * 1024));
+    }
+
+    private void close() {
+        if (json == null) {
+            return;
+        }
+        try {
+            json.close();
+        } catch (IOException e) {
+            logger.warn("Event log close failed - File: {}, Error: {}", file, e.getMessage());
+        } finally {
+            try {
+                fileOut.close(); // the generator may have failed before closing it
+            } catch (IOException e) {
+                logger.warn("Event log close failed - File: {}, Error: {}", file, e.getMessage());
+            }
+        }
+        json = null;
+        fileOut = null;
+    }
+}
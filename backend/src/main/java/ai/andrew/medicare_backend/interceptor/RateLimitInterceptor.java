@@ -1,29 +1,178 @@
 package ai.andrew.medicare_backend.interceptor;
 
+import ai.andrew.medicare_backend.config.RateLimitProperties;
+import ai.andrew.medicare_backend.config.RateLimitProperties.Limit;
+import ai.andrew.medicare_backend.service.ChatSessionStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits /api requests per client and per endpoint.
+ *
+ * Each (client, endpoint) pair gets its own token bucket, so a noisy client only uses up
+ * its own quota and requests from different clients never touch the same CAS state.
+ * Buckets live in a bounded Caffeine map and are dropped once idle for the longest
+ * configured period, by which time they would have refilled anyway.
+ *
+ * Clients are keyed by what ratelimit.client-key lists, but only by values the server
+ * can vouch for: an X-API-Key from ratelimit.api-keys, or an X-Session-Id that
+ * ChatSessionStore issued and still holds. Anything else is keyed by remote address,
+ * so a made-up header value never buys a fresh bucket (or evicts real ones).
+ *
+ * Every response carries X-RateLimit-Limit and X-RateLimit-Remaining; a 429 also
+ * carries Retry-After (seconds). Async handlers (Mono, Flux) are dispatched a second
+ * time to write their result; only the first dispatch counts.
+ */
 @Component
 public class RateLimitInterceptor implements HandlerInterceptor {
 
-    private final Bucket bucket;
+    public static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final String API_KEY_HEADER = "X-API-Key";
+    public static final String SESSION_HEADER = "X-Session-Id";
+
+    private static final String API_PREFIX = "/api/";
+    private static final String DEFAULT_ENDPOINT = "default";
+
+    /** One bucket per client and endpoint limit. */
+    record BucketKey(String client, String endpoint) { }
+
+    private final RateLimitProperties properties;
+    private final ChatSessionStore sessionStore;
+    private final Cache<BucketKey, Bucket> buckets;
+    private final MeterRegistry meterRegistry;
 
-    public RateLimitInterceptor(Bucket bucket) {
-        this.bucket = bucket;
+    public RateLimitInterceptor(RateLimitProperties properties, ChatSessionStore sessionStore,
+                                MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.sessionStore = sessionStore;
+        this.meterRegistry = meterRegistry;
+        Duration longestPeriod = properties.endpoints().values().stream()
+                .map(Limit::period)
+                .reduce(properties.defaults().period(), (a, b) -> a.compareTo(b) >= 0 ? a : b);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.maxClients())
+                .expireAfterAccess(longestPeriod)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, "ratelimit.buckets");
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        if (bucket.tryConsume(1)) {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true; // charged on the initial dispatch; the response may be committed by now
+        }
+        String endpoint = endpointFor(request.getRequestURI().substring(request.getContextPath().length()));
+        Limit limit = limitFor(endpoint);
+        ConsumptionProbe probe = tryConsume(clientKey(request), endpoint);
+
+        response.setHeader(LIMIT_HEADER, Long.toString(limit.capacity()));
+        response.setHeader(REMAINING_HEADER, Long.toString(probe.getRemainingTokens()));
+        if (probe.isConsumed()) {
             return true;
         }
-        
+
+        meterRegistry.counter("ratelimit.rejected", "endpoint", endpoint).increment();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill() + 999_999_999));
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
         response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
-        response.getWriter().write("Rate limit exceeded. You can make up to 100 requests per hour. Please try again later.");
+        response.getWriter().write("Rate limit exceeded. You can make up to " + limit.capacity()
+                + " requests per " + describe(limit.period()) + ". Please try again later.");
         return false;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Takes one token from the client's bucket for the endpoint (as returned by
+     * {@link #endpointFor}). Public so benchmarks can drive it without a servlet request.
+     */
+    public ConsumptionProbe tryConsume(String client, String endpoint) {
+        return buckets.get(new BucketKey(client, endpoint), key -> newBucket(limitFor(key.endpoint())))
+                      .tryConsumeAndReturnRemaining(1);
+    }
+
+    /**
+     * The configured endpoint a path falls under: the longest configured prefix of the path
+     * below /api, matched on whole segments, or "default".
+     */
+    public String endpointFor(String path) {
+        if (!path.startsWith(API_PREFIX)) {
+            return DEFAULT_ENDPOINT;
+        }
+        String rest = path.substring(API_PREFIX.length());
+        while (!rest.isEmpty()) {
+            if (properties.endpoints().containsKey(rest)) {
+                return rest;
+            }
+            int slash = rest.lastIndexOf('/');
+            rest = slash < 0 ? "" : rest.substring(0, slash);
+        }
+        return DEFAULT_ENDPOINT;
+    }
+
+    private Limit limitFor(String endpoint) {
+        return properties.endpoints().getOrDefault(endpoint, properties.defaults());
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        for (String source : properties.clientKey()) {
+            String value = switch (source) {
+                case "api-key" -> validApiKey(request.getHeader(API_KEY_HEADER));
+                case "session" -> liveSession(request.getHeader(SESSION_HEADER));
+                default -> request.getRemoteAddr();
+            };
+            if (value != null && !value.isBlank()) {
+                return source + ":" + value;
+            }
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private String validApiKey(String apiKey) {
+        return apiKey != null && properties.apiKeys().contains(apiKey) ? apiKey : null;
+    }
+
+    private String liveSession(String sessionId) {
+        return sessionId != null && sessionStore.isLive(sessionId) ? sessionId : null;
+    }
+
+    private static Bucket newBucket(Limit limit) {
+        return Bucket.builder()
+                .addLimit(Bandwidth.builder()
+                        .capacity(limit.capacity())
+                        .refillGreedy(limit.capacity(), limit.period())
+                        .build())
+                .build();
+    }
+
+    private static String describe(Duration period) {
+        if (period.equals(Duration.ofHours(1))) {
+            return "hour";
+        }
+        if (period.equals(Duration.ofMinutes(1))) {
+            return "minute";
+        }
+        if (period.toSeconds() % 3600 == 0) {
+            return period.toHours() + " hours";
+        }
+        if (period.toSeconds() % 60 == 0) {
+            return period.toMinutes() + " minutes";
+        }
+        return period.toSeconds() + " seconds";
+    }
+}
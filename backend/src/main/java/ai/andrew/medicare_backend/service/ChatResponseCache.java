@@ -0,0 +1,98 @@
+package ai.andrew.medicare_backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Bounded in-memory cache of OpenAI chat replies.
+ *
+ * Many users ask nearly the same question ("what should I do for a fever"), so replies
+ * are cached under the normalized message plus the catalog context that was sent with it.
+ * Entries expire after a TTL and the least valuable ones are evicted past the size limit.
+ *
+ * Metrics (on /actuator/metrics): cache.gets{cache=openai.responses,result=hit|miss},
+ * cache.evictions, cache.size.
+ */
+@Component
+public class ChatResponseCache {
+
+    /** Cache key: what the model sees, minus differences that don't change the answer. */
+    record Key(String message, String context) { }
+
+    private final Cache<Key, String> cache;
+    private final boolean enabled;
+
+    public ChatResponseCache(MeterRegistry meterRegistry,
+                             @Value("${openai.cache.enabled:true}") boolean enabled,
+                             @Value("${openai.cache.max-entries:1000}") long maxEntries,
+                             @Value("${openai.cache.ttl:1h}") Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "openai.responses");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String get(String message, String context) {
+        return enabled ? cache.getIfPresent(key(message, context)) : null;
+    }
+
+    public void put(String message, String context, String reply) {
+        if (enabled) {
+            cache.put(key(message, context), reply);
+        }
+    }
+
+    long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    static Key key(String message, String context) {
+        return new Key(normalize(message), context == null ? "" : context);
+    }
+
+    /**
+     * Lowercases, collapses whitespace and drops trailing punctuation, so
+     * "What should I do for a fever?" and "what should i do for a  fever" share an entry.
+     */
+    static String normalize(String message) {
+        StringBuilder sb = new StringBuilder(message.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c);
+        }
+        int end = sb.length();
+        while (end > 0 && isTrailingPunctuation(sb.charAt(end - 1))) {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString().toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '?' || c == '!' || c == '.' || c == ' ';
+    }
+}
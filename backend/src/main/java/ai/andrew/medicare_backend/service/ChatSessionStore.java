@@ -0,0 +1,181 @@
+package ai.andrew.medicare_backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory conversation history for /api/chat-combined, keyed by session id.
+ *
+ * Each session keeps only its most recent turns that fit in the token budget, so the
+ * history sent to OpenAI (and with it prompt size, latency and cost) stays capped and
+ * memory is bounded by max-sessions × budget. Sessions idle longer than the idle
+ * timeout are dropped; past max-sessions the least recently used one goes first.
+ *
+ * Tokens are estimated as one per four characters plus a few per message, which is
+ * close enough for English text to keep the budget honest without a tokenizer.
+ */
+@Component
+public class ChatSessionStore {
+
+    /** One message of a conversation, as OpenAI's chat API sees it. */
+    public record Turn(String role, String content) {
+        int tokens() {
+            return estimateTokens(content);
+        }
+    }
+
+    private static final class Session {
+        final ArrayDeque<Turn> turns = new ArrayDeque<>();
+        int tokens;
+        long lastAccess;
+
+        Session(long now) {
+            this.lastAccess = now;
+        }
+    }
+
+    // access order, so the least recently used session is always first
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(256, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock(); // j.u.c lock: no carrier pinning on virtual threads
+
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+    private final int tokenBudget;
+    private final Counter idleEvictions;
+    private final Counter capacityEvictions;
+
+    public ChatSessionStore(MeterRegistry meterRegistry,
+                            @Value("${chat.session.max-sessions:10000}") int maxSessions,
+                            @Value("${chat.session.idle-timeout:30m}") Duration idleTimeout,
+                            @Value("${chat.session.history-token-budget:1000}") int tokenBudget) {
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.tokenBudget = tokenBudget;
+        this.idleEvictions = Counter.builder("chat.sessions.evicted")
+                .description("Chat sessions dropped from memory")
+                .tag("reason", "idle")
+                .register(meterRegistry);
+        this.capacityEvictions = Counter.builder("chat.sessions.evicted")
+                .description("Chat sessions dropped from memory")
+                .tag("reason", "capacity")
+                .register(meterRegistry);
+        Gauge.builder("chat.sessions", this, ChatSessionStore::size)
+                .description("Chat sessions held in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns {@code requestedId} if that session is still alive, otherwise starts a new
+     * session and returns its id.
+     */
+    public String resolve(String requestedId) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            dropIdle(now);
+            if (requestedId != null) {
+                Session session = sessions.get(requestedId);
+                if (session != null) {
+                    session.lastAccess = now;
+                    return requestedId;
+                }
+            }
+            String id = UUID.randomUUID().toString();
+            sessions.put(id, new Session(now));
+            while (sessions.size() > maxSessions) {
+                Iterator<Session> eldest = sessions.values().iterator();
+                eldest.next();
+                eldest.remove();
+                capacityEvictions.increment();
+            }
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Whether {@code sessionId} was issued by {@link #resolve} and has not been dropped since. */
+    public boolean isLive(String sessionId) {
+        lock.lock();
+        try {
+            dropIdle(System.nanoTime());
+            return sessions.containsKey(sessionId); // not get(): that would count as an access
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The session's remembered turns, oldest first; empty for unknown sessions. */
+    public List<Turn> history(String sessionId) {
+        lock.lock();
+        try {
+            Session session = sessions.get(sessionId);
+            return session == null ? List.of() : List.copyOf(session.turns);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a completed exchange, then drops the oldest exchanges until the history
+     * fits the token budget again.
+     */
+    public void record(String sessionId, String userMessage, String reply) {
+        lock.lock();
+        try {
+            Session session = sessions.get(sessionId);
+            if (session == null) {
+                return; // evicted while the reply was being generated
+            }
+            session.lastAccess = System.nanoTime();
+            for (Turn turn : List.of(new Turn("user", userMessage), new Turn("assistant", reply))) {
+                session.turns.addLast(turn);
+                session.tokens += turn.tokens();
+            }
+            // whole exchanges go, so the history never starts with an orphaned answer
+            while (session.tokens > tokenBudget && !session.turns.isEmpty()) {
+                session.tokens -= session.turns.removeFirst().tokens();
+                session.tokens -= session.turns.removeFirst().tokens();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return sessions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static int estimateTokens(String text) {
+        return (text.length() + 3) / 4 + 4; // + role and message framing
+    }
+
+    private void dropIdle(long now) {
+        // least recently used first, so stop at the first session that is still fresh
+        Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().lastAccess < idleTimeoutNanos) {
+                return;
+            }
+            it.remove();
+            idleEvictions.increment();
+        }
+    }
+}
@@ -1,42 +1,344 @@
 package ai.andrew.medicare_backend.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import ai.andrew.medicare_backend.catalog.CatalogSnapshot;
+import ai.andrew.medicare_backend.catalog.Category;
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.ConditionCatalog;
+import ai.andrew.medicare_backend.catalog.ScoredCondition;
+import ai.andrew.medicare_backend.catalog.Severity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Owns the condition catalog loaded from data.json.
+ *
+ * The build compiles data.json into a binary snapshot (data.catalog, see
+ * CatalogSnapshot) that loads without JSON parsing or re-indexing; it is used
+ * when present, and data.json otherwise. A catalog file given in
+ * conditions.catalog.path may be either format (".catalog" for a snapshot).
+ *
+ * The catalog is an immutable snapshot published through a single AtomicReference.
+ * A reload (file watcher or the "catalog" actuator endpoint) parses and indexes the
+ * new file on its own thread and then swaps the reference, so request threads never
+ * wait on a lock or see a half-built catalog; a failed reload keeps the old one.
+ */
 @Service
 public class ConditionService {
+    private static final Logger logger = LoggerFactory.getLogger(ConditionService.class);
 
-    private List<Map<String,Object>> db;
+    private static final String CLASSPATH_SOURCE = "classpath:/data.json";
+    private static final String CLASSPATH_SNAPSHOT = "classpath:/" + CatalogSnapshot.RESOURCE;
+    private static final String SNAPSHOT_SUFFIX = ".catalog";
+
+    /** Asked back when the text matches no condition. */
+    public static final String FOLLOW_UP_QUESTION =
+            "I'm not sure yet—could you describe your symptoms in more detail?";
+
+    /** What is currently being served, and where it came from. */
+    public record Snapshot(ConditionCatalog catalog, String source, Instant loadedAt) { }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final ReentrantLock reloadLock = new ReentrantLock(); // only reloaders take it
+
+    private final Timer reloadSuccess;
+    private final Timer reloadFailure;
+    private final Counter reloadFailures;
+
+    // matching runs on every request, so its meters are looked up once, not per call
+    private final MeterRegistry meterRegistry;
+    private final Timer matchTimer;
+    private final Timer rankTimer;
+    private final Counter misses;
+    private final Timer fuzzyTimer;
+    private final Map<MatchKey, Counter> matchesByCategory = new ConcurrentHashMap<>();
+
+    // How many ranked conditions are returned next to the first match
+    @Value("${conditions.ranking.top-k:3}")
+    private int rankingTopK = 3;
+
+    // Typo-tolerant matching after an exact miss: "nausia" still finds "nausea"
+    @Value("${conditions.fuzzy.enabled:true}")
+    private boolean fuzzyEnabled = true;
+
+    // Least share of trigrams (Dice coefficient) a phrase must have with a keyword to be compared
+    @Value("${conditions.fuzzy.min-similarity:0.5}")
+    private double fuzzyMinSimilarity = 0.5;
+
+    // Most edits allowed against a long keyword (shorter keywords allow fewer)
+    @Value("${conditions.fuzzy.max-edits:2}")
+    private int fuzzyMaxEdits = 2;
+
+    // Optional catalog file on disk; when empty the bundled classpath data.json is used
+    @Value("${conditions.catalog.path:}")
+    private String catalogPath = "";
+
+    // Load the bundled data.catalog (compiled from data.json at build time) instead of parsing data.json
+    @Value("${conditions.catalog.snapshot:true}")
+    private boolean useSnapshot = true;
+
+    // Reload automatically when the catalog file changes (needs conditions.catalog.path)
+    @Value("${conditions.catalog.watch:false}")
+    private boolean watch;
+
+    private WatchService watchService;
+    private Thread watcher;
+
+    public ConditionService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.matchTimer = Timer.builder("conditions.match")
+                .description("Time to find the first condition matching a message")
+                .register(meterRegistry);
+        this.rankTimer = Timer.builder("conditions.rank")
+                .description("Time to score and rank the conditions for a message")
+                .register(meterRegistry);
+        this.fuzzyTimer = Timer.builder("conditions.match.fuzzy")
+                .description("Time to look for a near match of a message that matched no keyword exactly")
+                .register(meterRegistry);
+        this.misses = Counter.builder("conditions.matches")
+                .description("Messages matched (by category of the match) or not matched")
+                .tag("result", "miss")
+                .tag("category", "none")
+                .register(meterRegistry);
+        this.reloadSuccess = Timer.builder("catalog.reload")
+                .description("Time to parse, index and publish the condition catalog")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.reloadFailure = Timer.builder("catalog.reload")
+                .description("Time to parse, index and publish the condition catalog")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+        this.reloadFailures = Counter.builder("catalog.reload.failures")
+                .description("Catalog reloads that failed and kept the previous catalog")
+                .register(meterRegistry);
+        Gauge.builder("catalog.conditions", current, ref -> ref.get() == null ? 0 : ref.get().catalog().size())
+                .description("Conditions in the catalog currently being served")
+                .register(meterRegistry);
+    }
 
     /* This takes the .JSON file and reads the keywords to determine the user's symptoms  */
     @PostConstruct
     void init() throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        InputStream in = getClass().getResourceAsStream("/data.json");
-        db = mapper.readValue(in, new TypeReference<>() {});
+        reload();
+        if (watch && !catalogPath.isBlank()) {
+            startWatcher(Path.of(catalogPath).toAbsolutePath());
+        }
     }
 
-    public Map<String,Object> keywordMatch(String userText) {
-        String lower = userText.toLowerCase();
-        return db.stream()
-                 .filter(row -> ((List<?>) row.get("keywords")).stream()
-                         .anyMatch(k -> lower.contains(k.toString())))
-                 .findFirst()
-                 .orElse(null);
+    @PreDestroy
+    void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Parses and indexes the catalog again and publishes it atomically.
+     * On failure the previous catalog stays in place and the exception is rethrown.
+     */
+    public Snapshot reload() throws IOException {
+        reloadLock.lock();
+        long start = System.nanoTime();
+        try {
+            String source = catalogPath.isBlank() ? CLASSPATH_SOURCE : catalogPath;
+            ConditionCatalog catalog = null;
+            if (catalogPath.isBlank() && useSnapshot) {
+                catalog = bundledSnapshot();
+                if (catalog != null) {
+                    source = CLASSPATH_SNAPSHOT;
+                }
+            }
+            if (catalog == null) {
+                try (InputStream in = catalogPath.isBlank()
+                        ? getClass().getResourceAsStream("/data.json")
+                        : Files.newInputStream(Path.of(catalogPath))) {
+                    if (in == null) {
+                        throw new IOException("Catalog not found: " + source);
+                    }
+                    catalog = catalogPath.endsWith(SNAPSHOT_SUFFIX) ? CatalogSnapshot.read(in) : ConditionCatalog.read(in);
+                }
+            }
+            Snapshot snapshot = new Snapshot(catalog, source, Instant.now());
+            current.set(snapshot);
+            long took = System.nanoTime() - start;
+            reloadSuccess.record(took, TimeUnit.NANOSECONDS);
+            logger.info("Condition catalog loaded - Source: {}, Conditions: {}, TookMs: {}",
+                    source, catalog.size(), TimeUnit.NANOSECONDS.toMillis(took));
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            reloadFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            reloadFailures.increment();
+            logger.error("Condition catalog reload failed, keeping previous catalog - Error: {}", e.getMessage());
+            throw e;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /**
+     * The catalog precompiled into the classpath at build time, or null if there is none
+     * (e.g. run from an IDE without the Gradle build) or it can't be read; data.json is
+     * then parsed instead.
+     */
+    private ConditionCatalog bundledSnapshot() {
+        try (InputStream in = getClass().getResourceAsStream("/" + CatalogSnapshot.RESOURCE)) {
+            return in == null ? null : CatalogSnapshot.read(in);
+        } catch (IOException e) {
+            logger.warn("Bundled catalog snapshot unreadable, parsing data.json - Error: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public ConditionCatalog catalog() {
+        return current.get().catalog();
+    }
+
+    /**
+     * Returns the first condition (in data.json order) having a keyword contained in the text,
+     * or null. One pass over the text regardless of catalog size.
+     *
+     * If no keyword is contained, words of the text that are a typo away from a keyword
+     * ("nausia", "head ache") match that keyword's condition (conditions.fuzzy.*).
+     */
+    public Condition keywordMatch(String userText) {
+        long start = System.nanoTime();
+        ConditionCatalog catalog = catalog();
+        String lowerText = userText.toLowerCase();
+        Condition match = catalog.firstMatch(lowerText);
+        long matched = System.nanoTime();
+        matchTimer.record(matched - start, TimeUnit.NANOSECONDS);
+        String result = "hit";
+        if (match == null && fuzzyEnabled) {
+            match = catalog.fuzzyMatch(lowerText, fuzzyMinSimilarity, fuzzyMaxEdits);
+            fuzzyTimer.record(System.nanoTime() - matched, TimeUnit.NANOSECONDS);
+            result = "fuzzy";
+        }
+        if (match == null) {
+            misses.increment();
+        } else {
+            matchesByCategory.computeIfAbsent(new MatchKey(result, match.category()), key -> Counter.builder("conditions.matches")
+                    .description("Messages matched (by category of the match) or not matched")
+                    .tag("result", key.result())
+                    .tag("category", key.category().name())
+                    .register(meterRegistry)).increment();
+        }
+        return match;
+    }
+
+    private record MatchKey(String result, Category category) { }
+
+    /**
+     * Returns every condition having at least one keyword contained in the text, in data.json order.
+     */
+    public List<Condition> keywordMatchAll(String userText) {
+        return catalog().allMatches(userText.toLowerCase());
+    }
+
+    /**
+     * Returns the best-scoring conditions for the text (weighted keyword hits,
+     * boosted by severity and mentioned red flags), highest score first.
+     */
+    public List<ScoredCondition> rankConditions(String userText) {
+        long start = System.nanoTime();
+        List<ScoredCondition> ranked = catalog().rank(userText.toLowerCase(), rankingTopK);
+        rankTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return ranked;
+    }
+
+    public List<Condition> findByCategory(String category) {
+        return catalog().byCategory(Category.of(category));
+    }
+
+    public List<Condition> findBySeverity(String severity) {
+        return catalog().bySeverity(Severity.fromLabel(severity));
+    }
+
+    public List<Condition> findByMedication(String medicationName) {
+        return catalog().byMedicationName(medicationName);
+    }
+
+    public List<Condition> findByIngredient(String ingredient) {
+        return catalog().byIngredient(ingredient);
     }
 
     // Returns a description or relevant context for the user's message
     public String getContextForUserMessage(String userMessage) {
-        Map<String, Object> match = keywordMatch(userMessage);
-        if (match != null && match.get("description") != null) {
-            return match.get("description").toString();
+        Condition match = keywordMatch(userMessage);
+        if (match != null && match.description() != null) {
+            return match.description();
         }
         return "";
     }
-}
\ No newline at end of file
+
+    /* ---------- file watcher ---------- */
+
+    private void startWatcher(Path file) throws IOException {
+        Path dir = file.getParent();
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        watcher = new Thread(() -> watchLoop(file), "catalog-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("Watching condition catalog for changes - Path: {}", file);
+    }
+
+    private void watchLoop(Path file) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean touched = key.pollEvents().stream()
+                        .anyMatch(event -> file.getFileName().equals(event.context()));
+                key.reset();
+                if (!touched) {
+                    continue;
+                }
+                // editors often write a file in several steps; let them settle first
+                Thread.sleep(250);
+                WatchKey settled;
+                while ((settled = watchService.poll()) != null) {
+                    settled.pollEvents();
+                    settled.reset();
+                }
+                try {
+                    reload();
+                } catch (IOException | RuntimeException e) {
+                    // already logged and counted by reload()
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // application shutting down
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.Severity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of the OpenAI calls: at most {@code limit} calls are in
+ * flight, and the rest wait in a queue served by priority, then arrival.
+ *
+ * Priority comes from the locally matched condition: URGENT when the message mentions
+ * one of its red flags or it is severe or an emergency, ELEVATED when it is moderate or
+ * moderate-severe, ROUTINE otherwise (including no match at all).
+ *
+ * The limit adapts between min-limit and max-limit (AIMD): it grows by 1/limit after a
+ * call that finished within latency-threshold while the limit was in use, and shrinks by
+ * backoff-ratio after one that failed upstream or ran slow. A struggling OpenAI therefore
+ * gets fewer concurrent calls instead of a longer line of them.
+ *
+ * Load is shed before it turns into timeouts: ROUTINE requests are turned away once
+ * routine-max-queue requests are waiting, and when the queue is full a new request
+ * evicts the newest waiter of lower priority or is turned away itself. Waiters also
+ * give up after their priority's max-wait. Turned away means {@link Rejected}, which
+ * the controllers answer with 503 and Retry-After.
+ *
+ * Metrics: openai.admission.queue (waiting), openai.admission.inflight,
+ * openai.admission.limit, openai.admission.wait (time to admission, by priority) and
+ * openai.admission.shed (by priority and reason: queue_full, evicted, timeout).
+ */
+@Component
+public class OpenAIAdmission {
+
+    public enum Priority {
+        ROUTINE, ELEVATED, URGENT;
+
+        /** The priority of a message given its local match (may be null). */
+        public static Priority of(String userMessage, Condition match) {
+            if (match == null) {
+                return ROUTINE;
+            }
+            Severity severity = match.severity();
+            if (severity.compareTo(Severity.SEVERE) >= 0 || mentionsRedFlag(userMessage, match)) {
+                return URGENT;
+            }
+            return severity.compareTo(Severity.MODERATE) >= 0 ? ELEVATED : ROUTINE;
+        }
+
+        private static boolean mentionsRedFlag(String userMessage, Condition match) {
+            List<String> redFlags = match.redFlags().items();
+            if (redFlags.isEmpty()) {
+                return false;
+            }
+            String lowerText = userMessage.toLowerCase(Locale.ROOT);
+            for (String redFlag : redFlags) {
+                if (lowerText.contains(redFlag.toLowerCase(Locale.ROOT))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** A request turned away by admission control; answered with 503. */
+    public static class Rejected extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final Priority priority;
+        private final Duration retryAfter;
+
+        Rejected(Priority priority, String reason, Duration retryAfter) {
+            super("OpenAI admission rejected a " + priority.tag() + " request: " + reason);
+            this.priority = priority;
+            this.retryAfter = retryAfter;
+        }
+
+        public Priority priority() {
+            return priority;
+        }
+
+        public Duration retryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * The right to make one call. Only the first of onSuccess, onError or release counts,
+     * so a finally block may always call release.
+     */
+    public final class Permit {
+        private final long admittedAt = System.nanoTime();
+        private final AtomicBoolean done;
+
+        private Permit(boolean counted) {
+            done = new AtomicBoolean(!counted); // uncounted permits (admission disabled) are born done
+        }
+
+        /** The call finished; a quick one lets the limit grow. */
+        public void onSuccess() {
+            if (done.compareAndSet(false, true)) {
+                freeSlot(System.nanoTime() - admittedAt <= latencyThresholdNanos);
+            }
+        }
+
+        /** The call failed; failures that mean OpenAI is unwell shrink the limit. */
+        public void onError(Throwable failure) {
+            if (done.compareAndSet(false, true)) {
+                freeSlot(!OpenAIRetryPolicy.isUpstreamFailure(failure)
+                        && System.nanoTime() - admittedAt <= latencyThresholdNanos);
+            }
+        }
+
+        /** Gives the slot back without saying anything about OpenAI (cancelled, or never sent). */
+        public void release() {
+            if (done.compareAndSet(false, true)) {
+                freeSlot(null);
+            }
+        }
+    }
+
+    private record Waiter(Priority priority, long seq, long enqueuedAt, CompletableFuture<Permit> admission) { }
+
+    // first = next to admit (highest priority, then oldest); last = first to evict
+    private static final Comparator<Waiter> ADMISSION_ORDER = Comparator
+            .comparing(Waiter::priority, Comparator.reverseOrder())
+            .thenComparingLong(Waiter::seq);
+
+    private final boolean enabled;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final int maxQueue;
+    private final int routineMaxQueue;
+    private final Map<Priority, Duration> maxWait = new EnumMap<>(Priority.class);
+    private final Duration retryAfter;
+    private final MeterRegistry meterRegistry;
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Map<ShedKey, Counter> shedCounters = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock(); // j.u.c lock: no carrier pinning on virtual threads
+    // guarded by lock
+    private final TreeSet<Waiter> queue = new TreeSet<>(ADMISSION_ORDER);
+    private double limit;
+    private int inFlight;
+    private long nextSeq;
+
+    public OpenAIAdmission(MeterRegistry meterRegistry,
+                           @Value("${openai.admission.enabled:true}") boolean enabled,
+                           @Value("${openai.admission.initial-limit:20}") int initialLimit,
+                           @Value("${openai.admission.min-limit:4}") int minLimit,
+                           @Value("${openai.admission.max-limit:${openai.http.max-connections:50}}") int maxLimit,
+                           @Value("${openai.admission.backoff-ratio:0.9}") double backoffRatio,
+                           @Value("${openai.admission.latency-threshold:10s}") Duration latencyThreshold,
+                           @Value("${openai.admission.max-queue:100}") int maxQueue,
+                           @Value("${openai.admission.routine-max-queue:25}") int routineMaxQueue,
+                           @Value("${openai.admission.max-wait.routine:2s}") Duration routineMaxWait,
+                           @Value("${openai.admission.max-wait.elevated:5s}") Duration elevatedMaxWait,
+                           @Value("${openai.admission.max-wait.urgent:15s}") Duration urgentMaxWait,
+                           @Value("${openai.admission.retry-after:5s}") Duration retryAfter) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.maxQueue = maxQueue;
+        this.routineMaxQueue = Math.min(routineMaxQueue, maxQueue);
+        this.maxWait.put(Priority.ROUTINE, routineMaxWait);
+        this.maxWait.put(Priority.ELEVATED, elevatedMaxWait);
+        this.maxWait.put(Priority.URGENT, urgentMaxWait);
+        this.retryAfter = retryAfter;
+        this.meterRegistry = meterRegistry;
+
+        for (Priority priority : Priority.values()) {
+            waitTimers.put(priority, Timer.builder("openai.admission.wait")
+                    .description("Time OpenAI calls waited for admission")
+                    .tag("priority", priority.tag())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("openai.admission.queue", this, OpenAIAdmission::queued)
+                .description("OpenAI calls waiting for admission")
+                .register(meterRegistry);
+        Gauge.builder("openai.admission.inflight", this, OpenAIAdmission::inFlight)
+                .description("OpenAI calls admitted and not yet finished")
+                .register(meterRegistry);
+        Gauge.builder("openai.admission.limit", this, OpenAIAdmission::limit)
+                .description("Current adaptive limit on concurrent OpenAI calls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Waits for a permit, for at most the priority's max-wait.
+     *
+     * @throws Rejected if the request is shed (queue full, evicted or waited too long)
+     */
+    public Permit acquire(Priority priority) throws InterruptedException {
+        CompletableFuture<Permit> admission = admit(priority);
+        try {
+            return admission.get();
+        } catch (InterruptedException e) {
+            if (!admission.cancel(false)) {
+                // admitted just now; hand the slot straight back
+                admission.thenAccept(Permit::release);
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw rejection(priority, e.getCause());
+        }
+    }
+
+    /**
+     * Non-blocking {@link #acquire}: emits the permit once admitted, or Rejected. A
+     * subscriber that cancels first leaves the queue, or hands back a permit it missed.
+     */
+    public Mono<Permit> acquireLater(Priority priority) {
+        return Mono.create(sink -> {
+            CompletableFuture<Permit> admission = admit(priority);
+            sink.onCancel(() -> {
+                if (!admission.cancel(false)) {
+                    admission.thenAccept(Permit::release);
+                }
+            });
+            admission.whenComplete((permit, failure) -> {
+                if (failure == null) {
+                    sink.success(permit);
+                } else if (!(failure instanceof CancellationException)) {
+                    sink.error(rejection(priority, failure));
+                }
+            });
+        });
+    }
+
+    private RuntimeException rejection(Priority priority, Throwable cause) {
+        if (cause instanceof Rejected rejected) {
+            return rejected;
+        }
+        if (cause instanceof TimeoutException) {
+            return new Rejected(priority, "waited " + maxWait.get(priority).toMillis() + " ms", retryAfter);
+        }
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+    }
+
+    private CompletableFuture<Permit> admit(Priority priority) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(new Permit(false));
+        }
+        Waiter waiter;
+        Waiter evicted = null;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (queue.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                waitTimers.get(priority).record(0, TimeUnit.NANOSECONDS);
+                return CompletableFuture.completedFuture(new Permit(true));
+            }
+            if (priority == Priority.ROUTINE && queue.size() >= routineMaxQueue) {
+                return shed(priority, "queue_full");
+            }
+            if (queue.size() >= maxQueue) {
+                Waiter lowest = queue.last();
+                if (lowest.priority().compareTo(priority) >= 0) {
+                    return shed(priority, "queue_full");
+                }
+                queue.pollLast();
+                evicted = lowest;
+            }
+            waiter = new Waiter(priority, nextSeq++, now, new CompletableFuture<>());
+            queue.add(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) {
+            countShed(evicted.priority(), "evicted");
+            evicted.admission().completeExceptionally(
+                    new Rejected(evicted.priority(), "evicted by a more urgent request", retryAfter));
+        }
+        // a waiter that gives up (timeout or cancel) leaves the queue; one already taken
+        // off it by dispatch() is handled there, when completing it fails
+        waiter.admission()
+                .orTimeout(maxWait.get(priority).toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((permit, failure) -> {
+                    if (failure != null && dequeue(waiter) && failure instanceof TimeoutException) {
+                        countShed(priority, "timeout");
+                    }
+                });
+        return waiter.admission();
+    }
+
+    private CompletableFuture<Permit> shed(Priority priority, String reason) {
+        countShed(priority, reason);
+        return CompletableFuture.failedFuture(new Rejected(priority, reason.replace('_', ' '), retryAfter));
+    }
+
+    private boolean dequeue(Waiter waiter) {
+        lock.lock();
+        try {
+            return queue.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees one slot, adjusts the limit ({@code healthy} null leaves it alone) and admits
+     * waiters into whatever room there is now.
+     */
+    private void freeSlot(Boolean healthy) {
+        List<Waiter> admitted = new ArrayList<>();
+        lock.lock();
+        try {
+            if (healthy != null) {
+                if (!healthy) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                } else if (inFlight >= (int) limit) {
+                    // only grow a limit that is actually being used
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            inFlight--;
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                admitted.add(queue.pollFirst());
+                inFlight++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // completed outside the lock: blocked callers and subscribers resume from here
+        long now = System.nanoTime();
+        for (Waiter waiter : admitted) {
+            if (waiter.admission().complete(new Permit(true))) {
+                waitTimers.get(waiter.priority()).record(now - waiter.enqueuedAt(), TimeUnit.NANOSECONDS);
+            } else {
+                // it timed out or was cancelled meanwhile; pass the slot on
+                freeSlot(null);
+            }
+        }
+    }
+
+    private void countShed(Priority priority, String reason) {
+        shedCounters.computeIfAbsent(new ShedKey(priority, reason), key -> Counter.builder("openai.admission.shed")
+                        .description("OpenAI calls turned away by admission control")
+                        .tag("priority", key.priority().tag())
+                        .tag("reason", key.reason())
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    private record ShedKey(Priority priority, String reason) { }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
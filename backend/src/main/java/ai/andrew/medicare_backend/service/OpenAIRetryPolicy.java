@@ -0,0 +1,128 @@
+package ai.andrew.medicare_backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a failed OpenAI call is tried again, and how long to wait first.
+ *
+ * Only failures another attempt can fix are retried: connection errors and 5xx/429
+ * answers. Timeouts are not (the call already used up its read timeout), nor are other
+ * 4xx answers. Waits use full jitter, a random time up to backoff × 2^(attempt-1), so
+ * clients that failed together don't all come back together.
+ *
+ * Retries also draw on a budget: every call adds budget-ratio of a retry, every retry
+ * spends a whole one, and the balance never exceeds budget-reserve. During an outage
+ * retries therefore add about budget-ratio extra load instead of multiplying it by
+ * max-attempts, while a quiet service still has the reserve to retry the odd blip.
+ */
+@Component
+public class OpenAIRetryPolicy {
+
+    private static final long ONE_RETRY = 1000; // the balance is kept in thousandths of a retry
+
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final long depositPerCall;
+    private final long maxBalance;
+    private final AtomicLong balance;
+    private final Counter retries;
+    private final Counter budgetExhausted;
+
+    public OpenAIRetryPolicy(MeterRegistry meterRegistry,
+                             @Value("${openai.retry.max-attempts:3}") int maxAttempts,
+                             @Value("${openai.retry.backoff:200ms}") Duration backoff,
+                             @Value("${openai.retry.budget-ratio:0.1}") double budgetRatio,
+                             @Value("${openai.retry.budget-reserve:10}") int budgetReserve) {
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.depositPerCall = Math.round(budgetRatio * ONE_RETRY);
+        this.maxBalance = budgetReserve * ONE_RETRY;
+        this.balance = new AtomicLong(maxBalance);
+        this.retries = Counter.builder("openai.retries")
+                .description("OpenAI calls tried again after a transient failure")
+                .tag("result", "retried")
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("openai.retries")
+                .description("OpenAI calls tried again after a transient failure")
+                .tag("result", "budget_exhausted")
+                .register(meterRegistry);
+    }
+
+    /** Called once per logical call, before the first attempt; tops up the retry budget. */
+    public void onCall() {
+        balance.accumulateAndGet(depositPerCall, (current, deposit) -> Math.min(maxBalance, current + deposit));
+    }
+
+    /**
+     * True if the call that just failed with {@code failure} on attempt {@code attempt}
+     * (1-based) should be tried again. A true answer spends one retry from the budget.
+     */
+    public boolean shouldRetry(Exception failure, int attempt) {
+        if (attempt >= maxAttempts || !isUpstreamFailure(failure) || hasCause(failure, InterruptedIOException.class)) {
+            return false;
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current < ONE_RETRY) {
+                budgetExhausted.increment();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - ONE_RETRY));
+        retries.increment();
+        return true;
+    }
+
+    /** How long to wait before attempt {@code attempt + 1}. */
+    public Duration backoff(int attempt) {
+        long ceiling = backoff.toMillis() << Math.min(attempt - 1, 10);
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * True for failures that mean OpenAI itself is unwell (unreachable, timing out, 5xx
+     * or 429), as opposed to a bad request. These are what the circuit breaker counts.
+     */
+    public static boolean isUpstreamFailure(Throwable failure) {
+        if (failure instanceof ResourceAccessException || failure instanceof WebClientRequestException) {
+            return true;
+        }
+        HttpStatusCode status = statusOf(failure);
+        return status != null
+                && (status.is5xxServerError() || status.value() == HttpStatus.TOO_MANY_REQUESTS.value());
+    }
+
+    /** The HTTP status OpenAI answered with, or null if the failure isn't an HTTP answer. */
+    static HttpStatusCode statusOf(Throwable failure) {
+        if (failure instanceof RestClientResponseException response) {
+            return response.getStatusCode();
+        }
+        if (failure instanceof WebClientResponseException response) {
+            return response.getStatusCode();
+        }
+        return null;
+    }
+
+    static boolean hasCause(Throwable failure, Class<? extends Throwable> type) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,11 +1,40 @@
 package ai.andrew.medicare_backend.service;
 
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.events.EventLog;
+import ai.andrew.medicare_backend.service.ChatSessionStore.Turn;
+import ai.andrew.medicare_backend.service.OpenAIAdmission.Permit;
+import ai.andrew.medicare_backend.service.OpenAIAdmission.Priority;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This service provides methods to interact with the OpenAI GPT-3.5 Turbo API for chat completions.
@@ -20,41 +49,32 @@ import java.util.*;
  * Usage:
  * - Inject this service into a controller.
  * - Call getChatResponse(userMessage) to get a chat reply from GPT-3.5 Turbo.
+ * - Call chat(userMessage, match, history, useCache, sessionId) for one turn of a session.
+ * - Call streamChatResponse(userMessage, match, history, sessionId) to get the reply as it is generated.
  * - Supports OpenAI function calling for symptom checking.
+ *
+ * Calls go through the "openai" circuit breaker. Transient failures are retried with
+ * jittered backoff within OpenAIRetryPolicy's budget; while the breaker is open, replies
+ * are built from the matched condition instead of waiting on OpenAI to fail again.
+ * Before any of that a call is admitted by OpenAIAdmission, which runs messages about
+ * severe conditions or their red flags first and turns routine ones away when busy
+ * (OpenAIAdmission.Rejected, passed on to the caller). Cached replies skip admission.
+ *
+ * Metrics: openai.request (each round trip, by mode and outcome), openai.function_call
+ * (the local symptom_checker branch) and openai.fallbacks (replies not from OpenAI).
+ * How each call ended is also recorded as an "upstream" event in the EventLog, under
+ * the caller's session id, with the exception's class and message when it failed.
  */
 @Service
 public class OpenAIService {
     /**
-     * The OpenAI API key, injected from application.properties or environment variable.
-     */
-    @Value("${openai.api.key}")
-    private String openaiApiKey;
-
-    /**
-     * The OpenAI Chat Completions endpoint for GPT-3.5 Turbo.
+     * The default OpenAI Chat Completions endpoint for GPT-3.5 Turbo.
      */
-    private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
+    public static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
 
-    // Inject the ConditionService for symptom checking
-    private final ConditionService conditionService;
-    public OpenAIService(ConditionService conditionService) {
-        this.conditionService = conditionService;
-    }
-
-    /**
-     * Sends a user message to the OpenAI GPT-3.5 Turbo API and returns the AI's response.
-     * Supports function calling for symptom checking.
-     *
-     * @param userMessage The user's message to send to the model.
-     * @return The AI's response as a string.
-     */
-    public String getChatResponse(String userMessage) {
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + openaiApiKey);
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
-        Map<String, Object> systemMessage = Map.of(
+    static final Map<String, Object> SYSTEM_MESSAGE = Map.of(
             "role", "system",
             "content", "You are \"Medicare AI\", a virtual healthcare assistant designed to help users understand their symptoms, medications, and general health questions. Your primary goal is to provide clear, accurate, and friendly information about health, wellness, and medications, especially as they relate to Medicare and older adults in the United States.\n\n" +
             "Your core responsibilities:\n" +
@@ -90,91 +110,614 @@ public class OpenAIService {
             "Assistant: Oh no, having a fever can really make you feel lousy! The most important thing is to rest and drink plenty of fluids. If you start to feel worse or your fever sticks around for more than a couple of days, it's a good idea to check in with your doctor. How high has your temperature been?\n\n" +
             "Always strive to be as helpful as possible within these guidelines, and prioritize user safety and information accuracy above all else.\n" +
             "NO lists, answer like a friend."
-        );
+    );
+
+    // Function schema for symptom checking
+    static final Map<String, Object> SYMPTOM_CHECKER_FUNCTION = Map.of(
+        "name", "symptom_checker",
+        "description", "Checks symptoms and returns possible conditions, medications, and advice.",
+        "parameters", Map.of(
+            "type", "object",
+            "properties", Map.of(
+                "symptoms", Map.of(
+                    "type", "string",
+                    "description", "A description of the user's symptoms."
+                )
+            ),
+            "required", List.of("symptoms")
+        )
+    );
+
+    private static final String MODEL = "gpt-3.5-turbo";
+
+    // Request bodies start with a constant head, serialized once at class load:
+    //   {"model":...,"functions":[...],"function_call":"auto","messages":[{system message}
+    // Each request then writes only its own messages after it, and closes the body.
+    private static final byte[] COMPLETION_HEAD = bodyHead(false);
+    private static final byte[] STREAM_HEAD = bodyHead(true);
+    private static final byte[] BODY_TAIL = "]}".getBytes(StandardCharsets.UTF_8);
+
+    // writes the per-request messages as bare objects after the head (no separators,
+    // and without closing the request stream it writes into)
+    private static final JsonFactory MESSAGE_WRITER = new JsonFactoryBuilder()
+            .rootValueSeparator((String) null)
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
 
+    private static final String AI_UNAVAILABLE =
+            "Our AI assistant is unavailable right now, so here is what our symptom checker found.\n\n";
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_DATA =
+            new ParameterizedTypeReference<>() {};
+
+    private final ConditionService conditionService;
+    private final RestTemplate restTemplate;
+    private final WebClient webClient;
+    private final ChatResponseCache responseCache;
+    private final CircuitBreaker circuitBreaker;
+    private final OpenAIRetryPolicy retryPolicy;
+    private final OpenAIAdmission admission;
+    private final EventLog events;
+    private final MeterRegistry meterRegistry;
+    private final String openaiApiUrl;
+    private final HttpHeaders headers;
+    private final Timer symptomCheckerHits;
+    private final Timer symptomCheckerMisses;
+    private final Map<RoundTripKey, Timer> roundTrips = new ConcurrentHashMap<>();
+    private final Map<String, Counter> fallbacks = new ConcurrentHashMap<>();
+
+    /**
+     * @param openAiRestTemplate the shared, pooled OpenAI client from OpenAIClientConfig
+     * @param openAiWebClient the shared non-blocking client used for streamed completions
+     * @param responseCache cache of earlier replies, keyed by normalized message and context
+     * @param openAiCircuitBreaker the "openai" breaker from OpenAIClientConfig
+     * @param retryPolicy when and how failed calls are retried
+     * @param admission limits concurrent calls and orders waiting ones by priority
+     * @param events where the outcome of each call is recorded
+     * @param meterRegistry where round-trip timings and fallbacks are recorded
+     * @param openaiApiKey the OpenAI API key, from application.properties or environment variable
+     * @param openaiApiUrl the Chat Completions endpoint (overridable for local stubs)
+     */
+    public OpenAIService(ConditionService conditionService,
+                         RestTemplate openAiRestTemplate,
+                         WebClient openAiWebClient,
+                         ChatResponseCache responseCache,
+                         CircuitBreaker openAiCircuitBreaker,
+                         OpenAIRetryPolicy retryPolicy,
+                         OpenAIAdmission admission,
+                         EventLog events,
+                         MeterRegistry meterRegistry,
+                         @Value("${openai.api.key}") String openaiApiKey,
+                         @Value("${openai.api.url:" + OPENAI_API_URL + "}") String openaiApiUrl) {
+        this.conditionService = conditionService;
+        this.restTemplate = openAiRestTemplate;
+        this.webClient = openAiWebClient;
+        this.responseCache = responseCache;
+        this.circuitBreaker = openAiCircuitBreaker;
+        this.retryPolicy = retryPolicy;
+        this.admission = admission;
+        this.events = events;
+        this.meterRegistry = meterRegistry;
+        this.openaiApiUrl = openaiApiUrl;
+        this.symptomCheckerHits = functionCallTimer(meterRegistry, "hit");
+        this.symptomCheckerMisses = functionCallTimer(meterRegistry, "miss");
+
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set("Authorization", "Bearer " + openaiApiKey);
+        requestHeaders.setContentType(MediaType.APPLICATION_JSON);
+        this.headers = HttpHeaders.readOnlyHttpHeaders(requestHeaders);
+    }
+
+    /**
+     * Sends a user message to the OpenAI GPT-3.5 Turbo API and returns the AI's response.
+     * Supports function calling for symptom checking. Replies are served from the
+     * response cache when possible.
+     *
+     * @param userMessage The user's message to send to the model.
+     * @return The AI's response as a string.
+     */
+    public String getChatResponse(String userMessage) {
+        return getChatResponse(userMessage, true);
+    }
+
+    /**
+     * Same as {@link #getChatResponse(String)}; with {@code useCache} false the cached reply
+     * is skipped and OpenAI is asked again (the fresh reply still refreshes the cache).
+     */
+    public String getChatResponse(String userMessage, boolean useCache) {
         // 1. Try to match userMessage to your JSON data (e.g., medication or condition)
-        String context = conditionService.getContextForUserMessage(userMessage); // You write this method
-
-        // 2. Build the system and context messages
-        List<Map<String, Object>> messages = new ArrayList<>();
-        messages.add(systemMessage);
-        if (context != null && !context.isEmpty()) {
-            messages.add(Map.of("role", "assistant", "content", context));
-        }
-        messages.add(Map.of("role", "user", "content", userMessage));
-
-        // 3. Define the function schema for symptom checking
-        Map<String, Object> symptomCheckerFunction = Map.of(
-            "name", "symptom_checker",
-            "description", "Checks symptoms and returns possible conditions, medications, and advice.",
-            "parameters", Map.of(
-                "type", "object",
-                "properties", Map.of(
-                    "symptoms", Map.of(
-                        "type", "string",
-                        "description", "A description of the user's symptoms."
-                    )
-                ),
-                "required", List.of("symptoms")
-            )
-        );
-
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("model", "gpt-3.5-turbo"); // function calling supported
-        payload.put("messages", messages);
-        payload.put("functions", List.of(symptomCheckerFunction));
-        payload.put("function_call", "auto");
-
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(payload, headers);
-        ObjectMapper mapper = new ObjectMapper();
+        return getChatResponse(userMessage, conditionService.keywordMatch(userMessage), useCache);
+    }
+
+    /**
+     * Same as {@link #getChatResponse(String, boolean)}, for callers that already matched
+     * the message locally; {@code match} (may be null) supplies the context.
+     */
+    public String getChatResponse(String userMessage, Condition match, boolean useCache) {
+        return chat(userMessage, match, List.of(), useCache, null).text();
+    }
+
+    /**
+     * A reply from {@link #chat}; {@code answered} is false for the apologies sent when
+     * OpenAI could not be reached or gave nothing usable, and for local fallback answers.
+     */
+    public record ChatReply(String text, boolean answered) { }
+
+    /**
+     * One turn of a conversation: the earlier turns of the session ({@code history},
+     * oldest first, already trimmed to its token budget) go between the context and the
+     * new message. Replies that depend on history are neither served from nor stored in
+     * the response cache. {@code sessionId} (may be null) only labels the upstream event.
+     *
+     * @throws OpenAIAdmission.Rejected if admission control sheds the call
+     */
+    public ChatReply chat(String userMessage, Condition match, List<Turn> history, boolean useCache, String sessionId) {
+        String context = contextFor(match);
+        boolean cacheable = history.isEmpty();
+
+        if (useCache && cacheable) {
+            String cached = responseCache.get(userMessage, context);
+            if (cached != null) {
+                events.upstream(sessionId, "openai", "cached", 0, null);
+                return new ChatReply(cached, true);
+            }
+        }
 
+        long start = System.nanoTime();
+        // the breaker is asked first, so an open circuit never queues for or holds a slot
+        if (!circuitBreaker.tryAcquirePermission()) {
+            // OpenAI has been failing; answer from the catalog right away
+            events.upstream(sessionId, "openai", "circuit_open", 0, null);
+            countFallback("circuit_open");
+            return new ChatReply(localAnswer(match), false);
+        }
         try {
-            ResponseEntity<Map> response = restTemplate.postForEntity(OPENAI_API_URL, request, Map.class);
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                Object choicesObj = response.getBody().get("choices");
-                if (choicesObj instanceof List<?> choices && !choices.isEmpty()) {
-                    Object firstChoice = choices.get(0);
-                    if (firstChoice instanceof Map<?,?> choiceMap) {
-                        // Check if the model wants to call a function
-                        Object functionCallObj = choiceMap.get("function_call");
-                        if (functionCallObj instanceof Map<?,?> functionCall) {
-                            String functionName = (String) functionCall.get("name");
-                            if ("symptom_checker".equals(functionName)) {
-                                // Parse arguments and call the local symptom checker
-                                String argsJson = (String) functionCall.get("arguments");
-                                Map<String, Object> args = mapper.readValue(argsJson, Map.class);
-                                String symptoms = (String) args.get("symptoms");
-                                Map<String, Object> result = conditionService.keywordMatch(symptoms);
-                                if (result != null) {
-                                    return "Symptom Checker Result:\n" +
-                                        "Condition: " + result.getOrDefault("condition", "Unknown") + "\n" +
-                                        "Medication: " + result.getOrDefault("medication", "None recommended") + "\n" +
-                                        "Advice: " + result.getOrDefault("advice", "Please consult a healthcare provider.");
-                                } else {
-                                    return "No specific condition identified. Please provide more details about your symptoms.";
-                                }
-                            }
+            String reply = completeWithRetries(userMessage, context, history, Priority.of(userMessage, match));
+            if (reply != null) {
+                events.upstream(sessionId, "openai", "ok", System.nanoTime() - start, null);
+                // only real answers are cached, never the apologies below
+                if (cacheable) {
+                    responseCache.put(userMessage, context, reply);
+                }
+                return new ChatReply(reply, true);
+            }
+        } catch (OpenAIAdmission.Rejected shed) {
+            events.upstream(sessionId, "openai", "shed", System.nanoTime() - start, null);
+            throw shed;
+        } catch (InterruptedException e) {
+            // cancelled (deadline, shutdown): no more attempts, and the caller still sees the interrupt
+            Thread.currentThread().interrupt();
+            events.upstream(sessionId, "openai", "interrupted", System.nanoTime() - start, null);
+            countFallback("interrupted");
+            return new ChatReply("Sorry, I'm not working right now. 😔", false);
+        } catch (Exception e) {
+            events.upstream(sessionId, "openai", "error", System.nanoTime() - start, e);
+            countFallback("error");
+            return new ChatReply("Sorry, there was an error contacting the OpenAI service: " + e.getMessage(), false);
+        }
+        events.upstream(sessionId, "openai", "no_answer", System.nanoTime() - start, null);
+        countFallback("no_answer");
+        return new ChatReply("Sorry, I'm not working right now. 😔", false);
+    }
+
+    /**
+     * Asks OpenAI, retrying transient failures as the retry policy allows. The caller
+     * holds the circuit breaker's permission for the first attempt; each retry asks for
+     * a new one. Every attempt is admitted on its own, so the backoff between attempts
+     * holds neither an admission slot nor a breaker permission.
+     *
+     * A retry that the breaker (opened in the meantime) or admission control turns away
+     * is not made, and the last failure is thrown instead. An interrupt, while waiting
+     * for admission or backing off, ends the retries with InterruptedException.
+     *
+     * @throws OpenAIAdmission.Rejected if the first attempt is shed
+     */
+    private String completeWithRetries(String userMessage, String context, List<Turn> history, Priority priority)
+            throws Exception {
+        retryPolicy.onCall();
+        Exception lastFailure = null;
+        for (int attempt = 1; ; attempt++) {
+            Permit permit;
+            try {
+                permit = admission.acquire(priority);
+            } catch (InterruptedException interrupted) {
+                circuitBreaker.releasePermission();
+                throw interrupted;
+            } catch (Exception notAdmitted) {
+                circuitBreaker.releasePermission();
+                throw lastFailure != null ? lastFailure : notAdmitted;
+            }
+            long start = circuitBreaker.getCurrentTimestamp();
+            try {
+                String reply = requestCompletion(userMessage, context, history);
+                circuitBreaker.onResult(circuitBreaker.getCurrentTimestamp() - start, circuitBreaker.getTimestampUnit(), reply);
+                permit.onSuccess();
+                return reply;
+            } catch (Exception e) {
+                circuitBreaker.onError(circuitBreaker.getCurrentTimestamp() - start, circuitBreaker.getTimestampUnit(), e);
+                permit.onError(e);
+                if (!retryPolicy.shouldRetry(e, attempt)) {
+                    throw e;
+                }
+                lastFailure = e;
+            } finally {
+                permit.release(); // no-op if already counted
+            }
+            Thread.sleep(retryPolicy.backoff(attempt).toMillis());
+            if (!circuitBreaker.tryAcquirePermission()) {
+                throw lastFailure;
+            }
+        }
+    }
+
+    /**
+     * One round trip to OpenAI. Returns null when the response has no usable answer.
+     * The request body is written straight into the outgoing request, and the response
+     * is read as it is parsed, keeping only the first choice.
+     */
+    private String requestCompletion(String userMessage, String context, List<Turn> history) throws Exception {
+        long start = System.nanoTime();
+        Completion completion;
+        try {
+            completion = restTemplate.execute(openaiApiUrl, HttpMethod.POST,
+                    request -> {
+                        request.getHeaders().putAll(headers);
+                        writeCompletionBody(request.getBody(), userMessage, context, history, false);
+                    },
+                    response -> {
+                        if (response.getStatusCode() != HttpStatus.OK) {
+                            return null;
                         }
-                        // Otherwise, return the normal AI message
-                        Object messageObj = choiceMap.get("message");
-                        if (messageObj instanceof Map<?,?> messageMap) {
-                            Object content = messageMap.get("content");
-                            if (content != null) {
-                                String aiReply = content.toString();
-                                // If the AI reply is too vague, add a follow-up prompt
-                                if (aiReply.trim().length() < 30 || aiReply.toLowerCase().contains("i'm not sure") || aiReply.toLowerCase().contains("i don't know")) {
-                                    return aiReply + "\n\nCould you please describe your symptoms or question in more detail so I can assist you better?";
-                                }
-                                return aiReply;
-                            }
+                        try (JsonParser json = MAPPER.getFactory().createParser(response.getBody())) {
+                            return readCompletion(json, "message");
                         }
+                    });
+        } catch (RuntimeException e) {
+            recordRoundTrip("blocking", start, e);
+            throw e;
+        }
+        recordRoundTrip("blocking", start, null);
+        if (completion == null) {
+            return null;
+        }
+        // Check if the model wants to call a function
+        FunctionCall functionCall = completion.functionCall();
+        if (functionCall != null && "symptom_checker".equals(functionCall.name())) {
+            return symptomChecker(functionCall.arguments());
+        }
+        // Otherwise, return the normal AI message
+        String aiReply = completion.content();
+        if (aiReply == null) {
+            return null;
+        }
+        // If the AI reply is too vague, add a follow-up prompt
+        if (aiReply.trim().length() < 30 || aiReply.toLowerCase().contains("i'm not sure") || aiReply.toLowerCase().contains("i don't know")) {
+            return aiReply + "\n\nCould you please describe your symptoms or question in more detail so I can assist you better?";
+        }
+        return aiReply;
+    }
+
+    /**
+     * Writes a completion request body: the pre-serialized head, then the context,
+     * history and user messages, then the closing brackets. With {@code stream} the
+     * body asks for Server-Sent Events and leaves out function calling.
+     * Package-private for OpenAIPayloadBenchmark.
+     */
+    static void writeCompletionBody(OutputStream out, String userMessage, String context, List<Turn> history,
+                                    boolean stream) throws IOException {
+        out.write(stream ? STREAM_HEAD : COMPLETION_HEAD);
+        try (JsonGenerator json = MESSAGE_WRITER.createGenerator(out)) {
+            if (context != null && !context.isEmpty()) {
+                writeMessage(json, "assistant", context);
+            }
+            for (Turn turn : history) {
+                writeMessage(json, turn.role(), turn.content());
+            }
+            writeMessage(json, "user", userMessage);
+        }
+        out.write(BODY_TAIL);
+    }
+
+    private static void writeMessage(JsonGenerator json, String role, String content) throws IOException {
+        json.writeRaw(',');
+        json.writeStartObject();
+        json.writeStringField("role", role);
+        json.writeStringField("content", content);
+        json.writeEndObject();
+    }
+
+    /** The first choice of a completion: its text, or the function the model wants called. */
+    record Completion(String content, FunctionCall functionCall) { }
+
+    record FunctionCall(String name, String arguments) { }
+
+    /**
+     * Reads the first choice out of a chat completion ({@code messageField} "message") or
+     * a streamed chunk ("delta") token by token, skipping everything else unparsed.
+     * Returns null if there is no choice. Package-private for OpenAIPayloadBenchmark.
+     */
+    static Completion readCompletion(JsonParser json, String messageField) throws IOException {
+        if (json.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        Completion completion = null;
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.currentName();
+            JsonToken value = json.nextToken();
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                JsonToken element = json.nextToken();
+                if (element == JsonToken.START_OBJECT) {
+                    completion = readChoice(json, messageField);
+                    element = json.nextToken();
+                }
+                while (element != null && element != JsonToken.END_ARRAY) {
+                    json.skipChildren();
+                    element = json.nextToken();
+                }
+            } else {
+                json.skipChildren();
+            }
+        }
+        return completion;
+    }
+
+    private static Completion readChoice(JsonParser json, String messageField) throws IOException {
+        Completion message = null;
+        FunctionCall choiceFunctionCall = null; // older responses put it next to the message
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.currentName();
+            JsonToken value = json.nextToken();
+            if (messageField.equals(field) && value == JsonToken.START_OBJECT) {
+                String content = null;
+                FunctionCall functionCall = null;
+                while (json.nextToken() == JsonToken.FIELD_NAME) {
+                    String messageProperty = json.currentName();
+                    json.nextToken();
+                    if ("content".equals(messageProperty)) {
+                        content = text(json);
+                    } else if ("function_call".equals(messageProperty)) {
+                        functionCall = readFunctionCall(json);
+                    } else {
+                        json.skipChildren();
                     }
                 }
+                message = new Completion(content, functionCall);
+            } else if ("function_call".equals(field)) {
+                choiceFunctionCall = readFunctionCall(json);
+            } else {
+                json.skipChildren();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "Sorry, there was an error contacting the OpenAI service: " + e.getMessage();
         }
-        return "Sorry, I'm not working right now. 😔";
+        if (message == null) {
+            return new Completion(null, choiceFunctionCall);
+        }
+        return message.functionCall() != null || choiceFunctionCall == null
+                ? message
+                : new Completion(message.content(), choiceFunctionCall);
+    }
+
+    private static FunctionCall readFunctionCall(JsonParser json) throws IOException {
+        if (json.currentToken() != JsonToken.START_OBJECT) {
+            json.skipChildren();
+            return null;
+        }
+        String name = null;
+        String arguments = null;
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.currentName();
+            json.nextToken();
+            if ("name".equals(field)) {
+                name = text(json);
+            } else if ("arguments".equals(field)) {
+                arguments = text(json);
+            } else {
+                json.skipChildren();
+            }
+        }
+        return new FunctionCall(name, arguments);
+    }
+
+    /** The current value if it is a string, else null; the value is consumed either way. */
+    private static String text(JsonParser json) throws IOException {
+        String text = json.currentToken() == JsonToken.VALUE_STRING ? json.getText() : null;
+        json.skipChildren();
+        return text;
+    }
+
+    /**
+     * Answers a symptom_checker function call from the local catalog.
+     */
+    private String symptomChecker(String argsJson) throws JsonProcessingException {
+        long start = System.nanoTime();
+        // Parse arguments and call the local symptom checker
+        SymptomCheckerArgs args = MAPPER.readValue(argsJson == null ? "{}" : argsJson, SymptomCheckerArgs.class);
+        Condition result = conditionService.keywordMatch(Objects.requireNonNullElse(args.symptoms(), ""));
+        String reply;
+        if (result != null) {
+            reply = "Symptom Checker Result:\n" +
+                "Condition: " + Objects.requireNonNullElse(result.name(), "Unknown") + "\n" +
+                "Medication: " + (result.medications().isEmpty() ? "None recommended" : result.medicationSummary()) + "\n" +
+                "Advice: " + Objects.requireNonNullElse(result.advice(), "Please consult a healthcare provider.");
+        } else {
+            reply = "No specific condition identified. Please provide more details about your symptoms.";
+        }
+        (result != null ? symptomCheckerHits : symptomCheckerMisses).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return reply;
+    }
+
+    private static Timer functionCallTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("openai.function_call")
+                .description("Time to answer a function call locally")
+                .tag("function", "symptom_checker")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /** The symptom_checker arguments, as declared in SYMPTOM_CHECKER_FUNCTION. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record SymptomCheckerArgs(String symptoms) { }
+
+    /**
+     * Streams the AI's answer as it is generated, one content delta per element
+     * (answered, like {@link #chat}'s replies, unless it is a local fallback).
+     * Function calling is left out here: the caller already has the local symptom match,
+     * which it passes in so it is used as context without matching the message twice.
+     * While the circuit breaker is open the local answer is sent as the only delta,
+     * not answered, without waiting for admission. A call shed by admission control fails with
+     * OpenAIAdmission.Rejected.
+     *
+     * @param userMessage The user's (sanitized) message.
+     * @param match The locally matched condition, or null.
+     * @param history Earlier turns of the session, oldest first.
+     * @param sessionId The session, for the upstream event (may be null).
+     * @return Content deltas in order; completes when OpenAI sends [DONE].
+     */
+    public Flux<ChatReply> streamChatResponse(String userMessage, Condition match, List<Turn> history, String sessionId) {
+        String context = contextFor(match);
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                events.upstream(sessionId, "openai", "circuit_open", 0, null);
+                countFallback("circuit_open");
+                return Flux.just(new ChatReply(localAnswer(match), false));
+            }
+            long admitStart = System.nanoTime();
+            // set once admitted; from then on the call below reports to the breaker
+            AtomicBoolean admitted = new AtomicBoolean();
+            // the permit is waited for without holding a thread, and held until the stream ends
+            return admission.acquireLater(Priority.of(userMessage, match))
+                    .flatMapMany(permit -> {
+                        admitted.set(true);
+                        return streamCompletion(userMessage, context, history, sessionId, permit);
+                    })
+                    .doOnError(OpenAIAdmission.Rejected.class,
+                            shed -> events.upstream(sessionId, "openai", "shed", System.nanoTime() - admitStart, null))
+                    .doFinally(signal -> {
+                        if (!admitted.get()) {
+                            circuitBreaker.releasePermission(); // shed or cancelled while waiting
+                        }
+                    });
+        });
+    }
+
+    /** The streaming call itself, once the breaker and admission have let it through. */
+    private Flux<ChatReply> streamCompletion(String userMessage, String context, List<Turn> history, String sessionId,
+                                          Permit permit) {
+        return Flux.defer(() -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(COMPLETION_HEAD.length + 1024);
+            try {
+                writeCompletionBody(body, userMessage, context, history, true);
+            } catch (IOException e) {
+                circuitBreaker.releasePermission();
+                permit.release();
+                return Flux.error(e);
+            }
+            long start = circuitBreaker.getCurrentTimestamp();
+            long startNanos = System.nanoTime();
+            return webClient.post()
+                    .uri(openaiApiUrl)
+                    .headers(h -> h.addAll(headers))
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(body.toByteArray())
+                    .retrieve()
+                    .bodyToFlux(SSE_DATA)
+                    .mapNotNull(ServerSentEvent::data)
+                    .takeWhile(data -> !"[DONE]".equals(data.trim()))
+                    .<ChatReply>handle((data, sink) -> {
+                        try (JsonParser json = MAPPER.getFactory().createParser(data)) {
+                            Completion delta = readCompletion(json, "delta");
+                            if (delta != null && delta.content() != null && !delta.content().isEmpty()) {
+                                sink.next(new ChatReply(delta.content(), true));
+                            }
+                        } catch (IOException e) {
+                            sink.error(e);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        circuitBreaker.onSuccess(circuitBreaker.getCurrentTimestamp() - start, circuitBreaker.getTimestampUnit());
+                        permit.onSuccess();
+                        recordRoundTrip("stream", startNanos, null);
+                        events.upstream(sessionId, "openai", "ok", System.nanoTime() - startNanos, null);
+                    })
+                    .doOnError(e -> {
+                        circuitBreaker.onError(circuitBreaker.getCurrentTimestamp() - start, circuitBreaker.getTimestampUnit(), e);
+                        permit.onError(e);
+                        recordRoundTrip("stream", startNanos, e);
+                        events.upstream(sessionId, "openai", "error", System.nanoTime() - startNanos, e);
+                    })
+                    .doOnCancel(() -> {
+                        circuitBreaker.releasePermission();
+                        permit.release();
+                        events.upstream(sessionId, "openai", "cancelled", System.nanoTime() - startNanos, null);
+                    });
+        });
+    }
+
+    private static String contextFor(Condition match) {
+        return match != null && match.description() != null ? match.description() : "";
+    }
+
+    private void recordRoundTrip(String mode, long startNanos, Throwable failure) {
+        roundTrips.computeIfAbsent(new RoundTripKey(mode, outcome(failure)), key -> Timer.builder("openai.request")
+                        .description("OpenAI round trips, from sending the request to the full response")
+                        .tag("mode", key.mode())
+                        .tag("outcome", key.outcome())
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private record RoundTripKey(String mode, String outcome) { }
+
+    private void countFallback(String reason) {
+        fallbacks.computeIfAbsent(reason, key -> Counter.builder("openai.fallbacks")
+                        .description("Chat replies not produced by OpenAI")
+                        .tag("reason", key)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    /** A low-cardinality name for how a round trip ended. */
+    static String outcome(Throwable failure) {
+        if (failure == null) {
+            return "success";
+        }
+        HttpStatusCode status = OpenAIRetryPolicy.statusOf(failure);
+        if (status != null) {
+            return status.value() == HttpStatus.TOO_MANY_REQUESTS.value() ? "rate_limited"
+                    : status.is5xxServerError() ? "server_error" : "client_error";
+        }
+        if (OpenAIRetryPolicy.hasCause(failure, InterruptedIOException.class)) {
+            return "timeout";
+        }
+        return OpenAIRetryPolicy.isUpstreamFailure(failure) ? "io_error" : "error";
+    }
+
+    /**
+     * What the user gets while OpenAI is unavailable: the matched condition's own guidance,
+     * or a request for more detail when nothing matched.
+     */
+    private static String localAnswer(Condition match) {
+        if (match == null || !match.hasGuidance()) {
+            return AI_UNAVAILABLE + ConditionService.FOLLOW_UP_QUESTION;
+        }
+        return AI_UNAVAILABLE + match.answerText();
+    }
+
+    private static byte[] bodyHead(boolean stream) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("model", MODEL); // function calling supported
+        if (stream) {
+            fields.put("stream", true);
+        } else {
+            fields.put("functions", List.of(SYMPTOM_CHECKER_FUNCTION));
+            fields.put("function_call", "auto");
+        }
+        fields.put("messages", List.of(SYSTEM_MESSAGE));
+        try {
+            String json = MAPPER.writeValueAsString(fields);
+            // drop the closing "]}" so the request's own messages can follow the system message
+            return json.substring(0, json.length() - 2).getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize constant OpenAI request part", e);
+        }
     }
-} 
\ No newline at end of file
+}
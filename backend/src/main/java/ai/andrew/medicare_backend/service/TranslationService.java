@@ -1,9 +1,34 @@
 package ai.andrew.medicare_backend.service;
 
+import ai.andrew.medicare_backend.catalog.Condition;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * TranslationService
@@ -14,21 +39,69 @@ import org.springframework.web.reactive.function.client.WebClient;
  *   toEnglish(text)          : any language → English
  *   fromEnglish(text, lang)  : English → target ISO 639-1 language code
  *
- * WebClient is Spring's non-blocking HTTP client.  For simplicity we call
- * .block() here so the method returns a plain String synchronously.
+ * WebClient is Spring's non-blocking HTTP client.  The *Async variants return
+ * a Mono, give each hop translation.timeout and fall back to the untranslated
+ * text when the translator is slow or down; toEnglish/fromEnglish simply block.
+ * The client itself (pool = concurrency limit) comes from TranslationClientConfig.
+ *
+ * Translations are cached by (text, source, target). Concurrent requests for the
+ * same translation share one upstream call, and the fixed texts /api/analyze-ml
+ * sends back (catalog answers, the follow-up question) are translated into
+ * translation.precompute.languages once at startup.
+ *
+ * translateAllAsync sends many texts of one language pair in a single call, for the
+ * batch analyze endpoint.
+ *
+ * Metrics: translation.hop (what a caller waits, cache included, by direction and
+ * language), translation.request (each LibreTranslate call) and translation.fallbacks.
+ * Language tags are ISO 639 codes; anything else is reported as "other".
  */
 @Service
 public class TranslationService {
+    private static final Logger logger = LoggerFactory.getLogger(TranslationService.class);
 
-    @Value("${libretranslate.url:https://libretranslate.de}")
-    private String baseUrl;
+    /** Cache key: a translation request as LibreTranslate sees it. */
+    record Key(String text, String source, String target) { }
+
+    /** The languages LibreTranslate offers; metric tags name only these (and auto). */
+    private static final Set<String> KNOWN_LANGUAGES = Set.of(
+            "auto", "ar", "az", "bg", "bn", "ca", "cs", "da", "de", "el", "en", "eo", "es", "et", "fa", "fi", "fr",
+            "ga", "he", "hi", "hu", "id", "it", "ja", "ko", "lt", "lv", "ms", "nb", "nl", "pl", "pt", "ro", "ru",
+            "sk", "sl", "sq", "sv", "th", "tl", "tr", "uk", "ur", "vi", "zh", "zt");
+
+    private static final String HOP = "translation.hop";
+    private static final String REQUEST = "translation.request";
 
     private final WebClient client;
+    private final ConditionService conditionService;
+    private final AsyncCache<Key, String> cache;
+    private final List<String> precomputeLanguages;
+    private final Duration timeout;
+    private final MeterRegistry meterRegistry;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<FallbackKey, Counter> fallbacks = new ConcurrentHashMap<>();
 
-    public TranslationService() {
-        this.client = WebClient.builder()
-                .baseUrl(baseUrl)
-                .build();
+    public TranslationService(WebClient translationWebClient,
+                              ConditionService conditionService,
+                              MeterRegistry meterRegistry,
+                              @Value("${translation.timeout:2s}") Duration timeout,
+                              @Value("${translation.cache.max-entries:5000}") long maxEntries,
+                              @Value("${translation.cache.ttl:24h}") Duration ttl,
+                              @Value("${translation.precompute.languages:}") String precomputeLanguages) {
+        this.client = translationWebClient;
+        this.timeout = timeout;
+        this.meterRegistry = meterRegistry;
+        this.conditionService = conditionService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "translations");
+        this.precomputeLanguages = Arrays.stream(precomputeLanguages.split(","))
+                .map(String::trim)
+                .filter(lang -> !lang.isEmpty() && !lang.equals("en"))
+                .toList();
     }
 
     /* ---------- public helpers ---------- */
@@ -41,34 +114,221 @@ public class TranslationService {
         return translate(text, "en", targetLang);
     }
 
+    /** Like {@link #toEnglish}, but without blocking; emits the original text on timeout or error. */
+    public Mono<String> toEnglishAsync(String text) {
+        return withFallback(new Key(text, "auto", "en"));
+    }
+
+    /** Like {@link #fromEnglish}, but without blocking; emits the English text on timeout or error. */
+    public Mono<String> fromEnglishAsync(String text, String targetLang) {
+        return withFallback(new Key(text, "en", targetLang));
+    }
+
+    /**
+     * Translates {@code texts} from {@code source} into {@code target} in one LibreTranslate
+     * call ("q" as an array), for batch work where many texts share a language pair.
+     * Cached texts and repeats are not sent again, and what comes back fills the cache.
+     * Emits the translations in the order given; on error, or when LibreTranslate takes
+     * longer than translation.timeout, every text not yet translated falls back to itself,
+     * as with the single-text variants.
+     */
+    public Mono<List<String>> translateAllAsync(List<String> texts, String source, String target) {
+        return Mono.defer(() -> {
+            Map<String, String> translated = new HashMap<>();
+            List<String> missing = new ArrayList<>();
+            for (String text : new LinkedHashSet<>(texts)) {
+                CompletableFuture<String> cachedTranslation = cache.getIfPresent(new Key(text, source, target));
+                if (cachedTranslation != null && cachedTranslation.isDone() && !cachedTranslation.isCompletedExceptionally()) {
+                    translated.put(text, cachedTranslation.join());
+                } else {
+                    missing.add(text);
+                }
+            }
+            Mono<List<String>> fetched = missing.isEmpty() ? Mono.just(List.of()) : requestAll(missing, source, target);
+            return fetched
+                    .timeout(timeout)
+                    .map(results -> {
+                        for (int i = 0; i < results.size(); i++) {
+                            translated.put(missing.get(i), results.get(i));
+                            cache.put(new Key(missing.get(i), source, target), CompletableFuture.completedFuture(results.get(i)));
+                        }
+                        return texts.stream().map(text -> translated.getOrDefault(text, text)).toList();
+                    })
+                    .onErrorResume(e -> {
+                        boolean toEnglish = "en".equals(target);
+                        countFallback(toEnglish ? "to_english" : "from_english", languageTag(toEnglish ? source : target));
+                        logger.warn("Batch translation unavailable, answering untranslated - Source: {}, Target: {}, Texts: {}, Error: {}",
+                                source, target, missing.size(), e.toString());
+                        return Mono.just(texts.stream().map(text -> translated.getOrDefault(text, text)).toList());
+                    });
+        });
+    }
+
+    /**
+     * Translates the catalog answers and the follow-up question into every configured
+     * language, in the background so startup isn't held up by a slow translator.
+     * Failures are logged and left to be retried on demand.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void precompute() {
+        if (precomputeLanguages.isEmpty()) {
+            return;
+        }
+        Set<String> texts = new LinkedHashSet<>();
+        texts.add(ConditionService.FOLLOW_UP_QUESTION);
+        for (Condition condition : conditionService.catalog().conditions()) {
+            texts.add(condition.answerText());
+        }
+        List<Key> keys = new ArrayList<>();
+        for (String lang : precomputeLanguages) {
+            for (String text : texts) {
+                keys.add(new Key(text, "en", lang));
+            }
+        }
+        long start = System.nanoTime();
+        Flux.fromIterable(keys)
+                .flatMap(key -> cached(key)
+                        .onErrorResume(e -> {
+                            logger.warn("Translation precompute failed - Target: {}, Error: {}", key.target(), e.getMessage());
+                            return Mono.empty();
+                        }), 4)
+                .count()
+                .subscribe(done -> logger.info("Translations precomputed - Languages: {}, Translated: {}/{}, TookMs: {}",
+                        precomputeLanguages, done, keys.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+
     /* ---------- internal helper ---------- */
 
     private String translate(String q, String source, String target) {
+        return cached(new Key(q, source, target))
+                .block();                    // convert reactive → blocking
+    }
+
+    private Mono<String> withFallback(Key key) {
+        boolean toEnglish = "en".equals(key.target());
+        String direction = toEnglish ? "to_english" : "from_english";
+        String language = languageTag(toEnglish ? key.source() : key.target());
+        // the timeout only stops waiting; the shared call goes on and fills the cache
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return cached(key)
+                    .timeout(timeout)
+                    .defaultIfEmpty(key.text())
+                    .doOnNext(translated -> record(HOP, start, "direction", direction,
+                            "language", language, "outcome", "translated"))
+                    .onErrorResume(e -> {
+                        record(HOP, start, "direction", direction,
+                                "language", language, "outcome", "fallback");
+                        countFallback(direction, language);
+                        logger.warn("Translation unavailable, answering untranslated - Source: {}, Target: {}, Error: {}",
+                                key.source(), key.target(), e.toString());
+                        return Mono.just(key.text());
+                    });
+        });
+    }
+
+    /**
+     * The cached translation, or a shared in-flight one. A failed call is dropped
+     * from the cache, so the next request tries again.
+     */
+    private Mono<String> cached(Key key) {
+        return Mono.defer(() -> {
+            CompletableFuture<String> future = cache.get(key, (k, executor) -> request(k).toFuture());
+            // suppressCancel: one caller giving up must not cancel the call others wait on.
+            // Caffeine also drops failed futures, but only after our callback has run.
+            return Mono.fromFuture(future, true)
+                    .doOnError(e -> cache.asMap().remove(key, future));
+        });
+    }
+
+    private Mono<String> request(Key key) {
         /*
          * LibreTranslate expects JSON:
          *   { "q":"text", "source":"xx", "target":"yy", "format":"text" }
          * and replies:
          *   { "translatedText":"..." }
          */
-        return client.post()
-                .uri("/translate")
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue("""
-                    { "q":"%s", "source":"%s", "target":"%s", "format":"text" }
-                    """.formatted(escape(q), source, target))
-                .retrieve()
-                .bodyToMono(Json.class)      // small record below
-                .block()                     // convert reactive → blocking
-                .translatedText();
+        String source = languageTag(key.source());
+        String target = languageTag(key.target());
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return client.post()
+                    .uri("/translate")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("""
+                        { "q":"%s", "source":"%s", "target":"%s", "format":"text" }
+                        """.formatted(escape(key.text()), key.source(), key.target()))
+                    .retrieve()
+                    .bodyToMono(Json.class)      // small record below
+                    .map(Json::translatedText)
+                    .doOnSuccess(translated -> record(REQUEST, start,
+                            "source", source, "target", target, "outcome", "success"))
+                    .doOnError(e -> record(REQUEST, start,
+                            "source", source, "target", target, "outcome", "error"));
+        });
+    }
+
+    private Mono<List<String>> requestAll(List<String> texts, String source, String target) {
+        // same call with "q" as an array; "translatedText" then comes back as one
+        String sourceTag = languageTag(source);
+        String targetTag = languageTag(target);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return client.post()
+                    .uri("/translate")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("q", texts, "source", source, "target", target, "format", "text"))
+                    .retrieve()
+                    .bodyToMono(BatchJson.class)
+                    .map(BatchJson::translatedText)
+                    .filter(translated -> translated.size() == texts.size())
+                    .switchIfEmpty(Mono.error(() -> new IllegalStateException(
+                            "LibreTranslate returned a different number of translations")))
+                    .doOnSuccess(translated -> record(REQUEST, start,
+                            "source", sourceTag, "target", targetTag, "outcome", "success"))
+                    .doOnError(e -> record(REQUEST, start,
+                            "source", sourceTag, "target", targetTag, "outcome", "error"));
+        });
+    }
+
+    private void countFallback(String direction, String language) {
+        fallbacks.computeIfAbsent(new FallbackKey(direction, language), key -> Counter.builder("translation.fallbacks")
+                        .description("Translations that timed out or failed and were answered untranslated")
+                        .tag("direction", key.direction())
+                        .tag("language", key.language())
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    private void record(String timer, long startNanos, String... tags) {
+        timers.computeIfAbsent(new TimerKey(timer, Arrays.asList(tags)), key -> Timer.builder(timer)
+                        .description(HOP.equals(timer)
+                                ? "Time a caller waits for a translation, cache and fallback included"
+                                : "LibreTranslate round trips")
+                        .tags(tags)
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private record TimerKey(String name, List<String> tags) { }
+
+    private record FallbackKey(String direction, String language) { }
+
+    /** Keeps metric tags low-cardinality whatever ?lang= a client sends. */
+    public static String languageTag(String language) {
+        return language != null && KNOWN_LANGUAGES.contains(language) ? language : "other";
     }
 
     /** small local record for JSON mapping */
     private record Json(String translatedText) {}
 
+    /** the same for a batch request */
+    private record BatchJson(List<String> translatedText) {}
+
     /** naive escaper for quotes & newlines in block string */
     private static String escape(String s) {
         return s.replace("\\", "\\\\")
                 .replace("\"", "\\\"")
                 .replace("\n", "\\n");
     }
-}
\ No newline at end of file
+}
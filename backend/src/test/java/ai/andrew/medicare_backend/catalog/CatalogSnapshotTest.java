@@ -0,0 +1,94 @@
+package ai.andrew.medicare_backend.catalog;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSnapshotTest {
+
+    private static ConditionCatalog fromJson;
+    private static byte[] bytes;
+
+    @BeforeAll
+    static void load() throws Exception {
+        try (InputStream in = CatalogSnapshotTest.class.getResourceAsStream("/data.json")) {
+            fromJson = ConditionCatalog.read(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CatalogSnapshot.write(fromJson, out);
+        bytes = out.toByteArray();
+    }
+
+    @Test
+    void readsBackTheSameCatalog() throws Exception {
+        ConditionCatalog snapshot = CatalogSnapshot.read(bytes);
+
+        assertEquals(fromJson.conditions(), snapshot.conditions());
+        assertEquals(fromJson.categories(), snapshot.categories());
+        for (String text : List.of("headache and nausea with sensitivity to light", "sore throat and ear pain",
+                "migraine with vision changes", "nothing relevant here")) {
+            assertEquals(fromJson.firstMatch(text), snapshot.firstMatch(text));
+            assertEquals(fromJson.allMatches(text), snapshot.allMatches(text));
+            assertEquals(fromJson.rank(text, 5), snapshot.rank(text, 5));
+        }
+        assertEquals(fromJson.byIngredient("acetaminophen"), snapshot.byIngredient("acetaminophen"));
+        for (String typo : List.of("head ache", "nausia", "stuffy-nose", "never mind")) {
+            assertEquals(fromJson.fuzzyMatch(typo, 0.5, 2), snapshot.fuzzyMatch(typo, 0.5, 2));
+        }
+    }
+
+    @Test
+    void sharesRepeatedStrings() throws Exception {
+        List<String> ingredients = CatalogSnapshot.read(bytes).conditions().stream()
+                .flatMap(c -> c.medications().stream())
+                .flatMap(m -> m.ingredients().stream())
+                .filter("acetaminophen"::equals)
+                .toList();
+
+        assertEquals(true, ingredients.size() > 1);
+        for (String ingredient : ingredients) {
+            assertSame(ingredients.get(0), ingredient);
+        }
+    }
+
+    @Test
+    void refusesToWriteNullListElements() {
+        CatalogSnapshot.Writer writer = new CatalogSnapshot.Writer(
+                new DataOutputStream(new ByteArrayOutputStream()), Map.of("cough", 0));
+
+        IOException e = assertThrows(IOException.class, () -> writer.strings(Arrays.asList("cough", null)));
+        assertTrue(e.getMessage().contains("null"), e.getMessage());
+    }
+
+    @Test
+    void rejectsOtherAndDamagedFiles() {
+        assertThrows(IOException.class, () -> CatalogSnapshot.read("[{\"keywords\":[]}]".getBytes()));
+        assertThrows(IOException.class, () -> CatalogSnapshot.read(Arrays.copyOf(bytes, bytes.length / 2)));
+    }
+
+    @Test
+    void rejectsNegativeAndOversizedLengths() {
+        // after magic and version: the string count, then the first string's byte length
+        for (int offset : new int[] {8, 12}) {
+            for (int length : new int[] {-1, Integer.MAX_VALUE}) {
+                byte[] corrupt = bytes.clone();
+                ByteBuffer.wrap(corrupt).putInt(offset, length);
+                IOException e = assertThrows(IOException.class, () -> CatalogSnapshot.read(corrupt));
+                assertTrue(e.getMessage().contains("truncated or corrupt"), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ai.andrew.medicare_backend.catalog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConditionCatalogTest {
+
+    private static ConditionCatalog catalog;
+
+    @BeforeAll
+    static void load() throws Exception {
+        try (InputStream in = ConditionCatalogTest.class.getResourceAsStream("/data.json")) {
+            catalog = ConditionCatalog.read(in);
+        }
+    }
+
+    @Test
+    void indexesAgreeWithAFullScan() {
+        for (Condition condition : catalog.conditions()) {
+            assertTrue(catalog.byCategory(condition.category()).contains(condition));
+            assertTrue(catalog.bySeverity(condition.severity()).contains(condition));
+            for (Medication medication : condition.medications()) {
+                assertTrue(catalog.byMedicationName(medication.name().toUpperCase()).contains(condition));
+                for (String ingredient : medication.ingredients()) {
+                    assertTrue(catalog.byIngredient(" " + ingredient + " ").contains(condition));
+                }
+            }
+        }
+        List<Condition> acetaminophen = catalog.conditions().stream()
+                .filter(c -> c.medications().stream().anyMatch(m -> m.ingredients().contains("acetaminophen")))
+                .toList();
+        assertFalse(acetaminophen.isEmpty());
+        assertEquals(acetaminophen, catalog.byIngredient("Acetaminophen"));
+    }
+
+    @Test
+    void serializesWithTheDataJsonPropertyNames() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode original;
+        try (InputStream in = getClass().getResourceAsStream("/data.json")) {
+            original = mapper.readTree(in).get(0);
+        }
+
+        JsonNode written = mapper.valueToTree(catalog.conditions().get(0));
+
+        assertEquals(original, written);
+    }
+
+    @Test
+    void readsLegacyRowsWithStringMedication() throws Exception {
+        String json = """
+                [{"keywords":["back pain"],"condition":"Acute back strain",
+                  "medication":"Ibuprofen, heat/ice","advice":"Gentle movement."}]
+                """;
+
+        ConditionCatalog legacy = ConditionCatalog.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        Condition condition = legacy.conditions().get(0);
+
+        assertEquals("Ibuprofen, heat/ice", condition.medicationSummary());
+        assertEquals(Severity.UNKNOWN, condition.severity());
+        assertEquals(condition, legacy.firstMatch("my back pain is back"));
+    }
+
+    @Test
+    void rankReturnsTopKInScoreOrder() {
+        List<ScoredCondition> ranked = catalog.rank("headache and nausea with sensitivity to light", 3);
+
+        assertFalse(ranked.isEmpty());
+        assertTrue(ranked.size() <= 3);
+        for (int i = 1; i < ranked.size(); i++) {
+            assertTrue(ranked.get(i - 1).score() >= ranked.get(i).score());
+        }
+        assertEquals(bruteForceBest("headache and nausea with sensitivity to light"), ranked.get(0).condition());
+        assertTrue(ranked.get(0).matchedKeywords().contains("headache"));
+    }
+
+    @Test
+    void redFlagsBoostConditionsWithKeywordHits() {
+        Condition migraine = catalog.firstMatch("migraine");
+        // a red flag that is not itself a keyword hit, so only the boost changes
+        String redFlag = migraine.redFlags().items().stream()
+                .map(String::toLowerCase)
+                .filter(f -> catalog.firstMatch(f) == null)
+                .findFirst()
+                .orElseThrow();
+
+        double plain = scoreOf(catalog.rank("migraine", 5), migraine);
+        List<ScoredCondition> flagged = catalog.rank("migraine and " + redFlag, 5);
+
+        assertEquals(plain + ConditionCatalog.RED_FLAG_BOOST, scoreOf(flagged, migraine), 1e-3);
+        assertTrue(flagged.stream().filter(s -> s.condition() == migraine)
+                .allMatch(s -> s.matchedRedFlags().contains(redFlag)));
+    }
+
+    @Test
+    void redFlagsSharedByManyConditionsKeepTheirScores() {
+        // "difficulty breathing" flags more conditions than the score table first holds
+        List<ScoredCondition> ranked = catalog.rank("sore throat and difficulty breathing", 3);
+
+        assertEquals("Common cold", ranked.get(0).condition().name());
+        assertEquals(List.of("difficulty breathing"), ranked.get(0).matchedRedFlags());
+    }
+
+    @Test
+    void rankIsEmptyWithoutKeywords() {
+        assertTrue(catalog.rank("nothing relevant here", 3).isEmpty());
+        assertTrue(catalog.rank("headache", 0).isEmpty());
+    }
+
+    @Test
+    void scoredConditionsSerializeFlat() {
+        JsonNode node = new ObjectMapper().valueToTree(catalog.rank("headache", 1).get(0));
+
+        assertTrue(node.has("condition") && node.get("condition").isTextual());
+        assertTrue(node.has("score"));
+        assertTrue(node.has("matchedKeywords"));
+    }
+
+    private static double scoreOf(List<ScoredCondition> ranked, Condition condition) {
+        return ranked.stream().filter(s -> s.condition() == condition).findFirst().orElseThrow().score();
+    }
+
+    // same formula as ConditionCatalog.rank, computed by scanning everything
+    private static Condition bruteForceBest(String lowerText) {
+        List<Condition> all = catalog.conditions();
+        Condition best = null;
+        double bestScore = 0;
+        for (Condition condition : all) {
+            double keywordScore = 0;
+            for (String keyword : condition.keywords()) {
+                if (lowerText.contains(keyword)) {
+                    long df = all.stream().filter(c -> c.keywords().contains(keyword)).count();
+                    keywordScore += Math.log(1.0 + (double) all.size() / df);
+                }
+            }
+            if (keywordScore <= 0) {
+                continue;
+            }
+            long redFlags = condition.redFlags().items().stream()
+                    .filter(f -> lowerText.contains(f.toLowerCase()))
+                    .count();
+            double score = keywordScore * condition.severity().rankingBoost() + ConditionCatalog.RED_FLAG_BOOST * redFlags;
+            if (score > bestScore) {
+                best = condition;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,48 @@
+package ai.andrew.medicare_backend.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FuzzyKeywordIndexTest {
+
+    private static final List<String> KEYWORDS =
+            List.of("headache", "nausea", "stuffy nose", "fever", "flu", "shortness of breath");
+
+    private final FuzzyKeywordIndex index = FuzzyKeywordIndex.build(KEYWORDS, new int[] {10, 11, 12, 13, 14, 15});
+
+    @Test
+    void findsKeywordsAFewEditsAway() {
+        assertEquals(10, index.closest("i have a head ache", 0.5, 2));
+        assertEquals(10, index.closest("haedache since noon", 0.5, 2));
+        assertEquals(11, index.closest("nausia", 0.5, 2));
+        assertEquals(12, index.closest("Stuffy-Nose!", 0.5, 2));
+        assertEquals(15, index.closest("shortnes of breth", 0.5, 2));
+    }
+
+    @Test
+    void keepsShortWordsAndFirstLettersExact() {
+        assertEquals(-1, index.closest("flue", 0.5, 2));   // under MIN_FUZZY_LENGTH: not indexed
+        assertEquals(-1, index.closest("never", 0.5, 2));  // one edit from "fever", other first letter
+        assertEquals(-1, index.closest("fewer", 0.5, 2));  // one edit from "fever", too few shared trigrams
+        assertEquals(-1, index.closest("nauseous headaches hurt", 0.5, 0));
+    }
+
+    @Test
+    void prefersTheFewestEdits() {
+        FuzzyKeywordIndex close = FuzzyKeywordIndex.build(List.of("sneezing", "sneezin"), new int[] {1, 2});
+
+        assertEquals(2, close.closest("sneezin", 0.5, 2));
+        assertEquals(1, close.closest("sneezingg", 0.5, 2));
+    }
+
+    @Test
+    void editDistanceGivesUpPastTheBound() {
+        assertEquals(1, FuzzyKeywordIndex.editDistance("nausia", "nausea", 2));
+        assertEquals(1, FuzzyKeywordIndex.editDistance("haedache", "headache", 2));
+        assertEquals(3, FuzzyKeywordIndex.editDistance("kitten", "sitting", 3));
+        assertEquals(-1, FuzzyKeywordIndex.editDistance("kitten", "sitting", 2));
+    }
+}
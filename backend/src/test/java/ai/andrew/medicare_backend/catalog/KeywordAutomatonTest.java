@@ -0,0 +1,60 @@
+package ai.andrew.medicare_backend.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeywordAutomatonTest {
+
+    @Test
+    void reportsOverlappingAndNestedKeywords() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(
+                List.of("he", "she", "his", "hers"), new int[] {0, 1, 2, 3});
+
+        List<String> hits = new ArrayList<>();
+        automaton.scan("ushers", (id, end) -> hits.add(automaton.keyword(id) + "@" + end));
+
+        assertEquals(List.of("she@4", "he@4", "hers@6"), hits);
+    }
+
+    @Test
+    void minPayloadMatchesNaiveFirstMatch() {
+        Random random = new Random(42);
+        String alphabet = "abc ";
+        for (int round = 0; round < 500; round++) {
+            List<String> keywords = new ArrayList<>();
+            int count = 1 + random.nextInt(12);
+            int[] payloads = new int[count];
+            for (int i = 0; i < count; i++) {
+                keywords.add(randomString(random, alphabet, random.nextInt(5)));
+                payloads[i] = random.nextInt(count);
+            }
+            String text = randomString(random, alphabet, random.nextInt(30));
+
+            int expected = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                if (text.contains(keywords.get(i))) {
+                    expected = Math.min(expected, payloads[i]);
+                }
+            }
+            if (expected == Integer.MAX_VALUE) {
+                expected = -1;
+            }
+
+            KeywordAutomaton automaton = KeywordAutomaton.build(keywords, payloads);
+            assertEquals(expected, automaton.minPayload(text), () -> keywords + " in '" + text + "'");
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package ai.andrew.medicare_backend.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExecutionModeConfigTest {
+
+    @Test
+    void virtualThreadsNeedJava21() {
+        assertThrows(IllegalStateException.class, () -> ExecutionModeConfig.checkRuntime(true, 17));
+        assertDoesNotThrow(() -> ExecutionModeConfig.checkRuntime(true, 21));
+        assertDoesNotThrow(() -> ExecutionModeConfig.checkRuntime(false, 17));
+    }
+}
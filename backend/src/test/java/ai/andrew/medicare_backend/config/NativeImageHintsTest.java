@@ -0,0 +1,45 @@
+package ai.andrew.medicare_backend.config;
+
+import ai.andrew.medicare_backend.catalog.CatalogSnapshot;
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.Medication;
+import ai.andrew.medicare_backend.catalog.ScoredCondition;
+import ai.andrew.medicare_backend.dto.BatchSymptomRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.util.ClassUtils;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeImageHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    NativeImageHintsTest() {
+        new NativeImageHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void registersJacksonBindingsForTypesOnlySeenAtRuntime() throws Exception {
+        for (Class<?> type : new Class<?>[] {Condition.class, ScoredCondition.class, Medication.class,
+                BatchSymptomRequest.class}) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(type)
+                    .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints), type.getName());
+        }
+        for (String name : NativeImageHints.PRIVATE_BINDINGS) {
+            Class<?> type = ClassUtils.forName(name, getClass().getClassLoader());
+            assertTrue(RuntimeHintsPredicates.reflection().onType(type)
+                    .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints), name);
+        }
+        // record components are read through their accessors
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Condition.class.getMethod("name")).test(hints));
+    }
+
+    @Test
+    void bundlesTheCatalogResources() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource("data.json").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource(CatalogSnapshot.RESOURCE).test(hints));
+    }
+}
@@ -0,0 +1,113 @@
+package ai.andrew.medicare_backend.controller;
+
+import ai.andrew.medicare_backend.service.ConditionService;
+import ai.andrew.medicare_backend.stub.LibreTranslateStubServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "analyze.batch.chunk-size=2")
+@AutoConfigureMockMvc
+class AnalyzeBatchTest {
+
+    private static final LibreTranslateStubServer STUB = startStub();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void translator(DynamicPropertyRegistry registry) {
+        registry.add("libretranslate.url", STUB::url);
+        registry.add("openai.api.key", () -> "test-key");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void answersEveryLineInOrderWithOneTranslationCallPerLanguage() throws Exception {
+        String ndjson = """
+                {"id":"a","text":"sore throat and a runny nose"}
+                {"id":"b","text":"dolor de garganta","lang":"es"}
+                {"id":"c","text":"mal de gorge","lang":"fr"}
+                {"id":"d","text":"<b>nothing</b> we know","lang":"es"}
+                {"text":"sore throat and a runny nose","lang":"EN"}
+                """;
+        int before = STUB.requestCount();
+
+        List<JsonNode> lines = analyze(ndjson, MediaType.APPLICATION_NDJSON);
+
+        assertEquals(5, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(i, lines.get(i).get("index").asInt());
+        }
+        assertEquals("a", lines.get(0).get("id").asText());
+        assertEquals("Common cold", lines.get(0).at("/rankedConditions/0/condition").asText());
+        assertFalse(lines.get(4).has("id"));
+        assertEquals(lines.get(0).get("answer"), lines.get(4).get("answer"));
+
+        // "[en] ..." is no catalog keyword, so the translated notes get the follow-up, translated back
+        assertEquals(LibreTranslateStubServer.translated(ConditionService.FOLLOW_UP_QUESTION, "es"),
+                lines.get(1).get("followup").asText());
+        assertEquals(LibreTranslateStubServer.translated(ConditionService.FOLLOW_UP_QUESTION, "fr"),
+                lines.get(2).get("followup").asText());
+
+        // chunk 1 (a, b): es both ways; chunk 2 (c, d): fr and es both ways, es answer cached; chunk 3: en only
+        assertEquals(5, STUB.requestCount() - before);
+    }
+
+    @Test
+    void acceptsAJsonArrayAndReportsMalformedInputInTheStream() throws Exception {
+        List<JsonNode> lines = analyze("[{\"text\":\"runny nose\"}, {\"text\":\"cough\"}]", MediaType.APPLICATION_JSON);
+        assertEquals(2, lines.size());
+
+        lines = analyze("{\"text\":\"runny nose\"}\n{\"text\":", MediaType.APPLICATION_NDJSON);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).has("answer") || lines.get(0).has("followup"));
+        assertEquals(1, lines.get(1).get("index").asInt());
+        assertTrue(lines.get(1).get("error").asText().startsWith("Malformed batch input"));
+    }
+
+    private List<JsonNode> analyze(String body, MediaType contentType) throws Exception {
+        String response = mockMvc.perform(post("/api/analyze-batch")
+                        .contentType(contentType)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            lines.add(MAPPER.readTree(line));
+        }
+        return lines;
+    }
+
+    private static LibreTranslateStubServer startStub() {
+        try {
+            return new LibreTranslateStubServer(4);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
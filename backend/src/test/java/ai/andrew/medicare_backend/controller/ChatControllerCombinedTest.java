@@ -0,0 +1,139 @@
+package ai.andrew.medicare_backend.controller;
+
+import ai.andrew.medicare_backend.stub.OpenAIStubServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "chat.combined.deadline=500ms")
+@AutoConfigureMockMvc
+class ChatControllerCombinedTest {
+
+    private static final OpenAIStubServer STUB = startStub();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void openAi(DynamicPropertyRegistry registry) {
+        registry.add("openai.api.key", () -> "test-key");
+        registry.add("openai.api.url", STUB::url);
+    }
+
+    @AfterEach
+    void resetStub() {
+        STUB.delay(Duration.ZERO);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void sendsTheLocalMatchAsContextAndInTheResponse() throws Exception {
+        JsonNode body = chat("I have a sore throat and a runny nose");
+
+        assertTrue(body.get("aiResponse").asText().startsWith("Oh no, a headache"));
+        assertFalse(body.has("partial"));
+        assertEquals("Common cold", body.at("/symptomResult/condition").asText());
+
+        JsonNode sent = MAPPER.readTree(STUB.lastRequestBody());
+        assertEquals(body.at("/symptomResult/description").asText(), sent.at("/messages/1/content").asText());
+    }
+
+    @Test
+    void answersWithoutTheAiWhenOpenAiMissesTheDeadline() throws Exception {
+        STUB.delay(Duration.ofSeconds(2));
+
+        long start = System.nanoTime();
+        JsonNode body = chat("sore throat and a runny nose since Monday");
+        long tookMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(body.get("partial").asBoolean());
+        assertTrue(body.has("disclaimer"));
+        assertEquals("Common cold", body.at("/symptomResult/condition").asText());
+        assertTrue(tookMs < 1500, "took " + tookMs + " ms");
+    }
+
+    @Test
+    void sendsEarlierTurnsOfTheSessionToOpenAi() throws Exception {
+        JsonNode first = chat("I have a sore throat", null);
+        String sessionId = first.get("sessionId").asText();
+
+        JsonNode second = chat("It started yesterday", sessionId);
+
+        assertEquals(sessionId, second.get("sessionId").asText());
+        JsonNode messages = MAPPER.readTree(STUB.lastRequestBody()).get("messages");
+        List<String> contents = new ArrayList<>();
+        messages.forEach(m -> contents.add(m.get("role").asText() + ": " + m.get("content").asText()));
+        assertTrue(contents.contains("user: I have a sore throat"), contents.toString());
+        assertTrue(contents.contains("assistant: " + first.get("aiResponse").asText()), contents.toString());
+        assertEquals("user: It started yesterday", contents.get(contents.size() - 1));
+    }
+
+    @Test
+    void rejectsAnEmptyMessageWithoutOpeningASession() throws Exception {
+        double sessions = meterRegistry.get("chat.sessions").gauge().value();
+
+        mockMvc.perform(post("/api/chat-combined")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"message\":\"<b></b>\"}"))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(sessions, meterRegistry.get("chat.sessions").gauge().value());
+    }
+
+    private JsonNode chat(String message) throws Exception {
+        return chat(message, null);
+    }
+
+    private JsonNode chat(String message, String sessionId) throws Exception {
+        Map<String, String> request = new HashMap<>();
+        request.put("message", message);
+        if (sessionId != null) {
+            request.put("sessionId", sessionId);
+        }
+        String response = mockMvc.perform(post("/api/chat-combined")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(MAPPER.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return MAPPER.readTree(response);
+    }
+
+    private static OpenAIStubServer startStub() {
+        try {
+            return new OpenAIStubServer(4);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ai.andrew.medicare_backend.controller;
+
+import ai.andrew.medicare_backend.service.ChatSessionStore;
+import ai.andrew.medicare_backend.stub.OpenAIStubServer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ChatControllerStreamTest {
+
+    private static final OpenAIStubServer STUB = startStub();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CircuitBreaker openAiCircuitBreaker;
+
+    @Autowired
+    private ChatSessionStore sessionStore;
+
+    @DynamicPropertySource
+    static void openAi(DynamicPropertyRegistry registry) {
+        registry.add("openai.api.key", () -> "test-key");
+        registry.add("openai.api.url", STUB::url);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void sendsSymptomsFirstThenDeltasThenDone() throws Exception {
+        MvcResult started = mockMvc.perform(post("/api/chat-combined/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .content("{\"message\":\"I have a headache and nausea\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        int symptoms = body.indexOf("event:symptoms");
+        int delta = body.indexOf("event:delta");
+        int done = body.indexOf("event:done");
+        assertTrue(symptoms >= 0 && symptoms < delta && delta < done, body);
+        assertTrue(body.contains("\"disclaimer\""), body);
+        assertTrue(body.contains("Migraine"), body);
+    }
+
+    @Test
+    void keepsLocalFallbacksOutOfTheSession() throws Exception {
+        openAiCircuitBreaker.transitionToForcedOpenState();
+        String body;
+        try {
+            MvcResult started = mockMvc.perform(post("/api/chat-combined/stream")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .content("{\"message\":\"I have a headache and nausea\"}"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            body = mockMvc.perform(asyncDispatch(started))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+        } finally {
+            openAiCircuitBreaker.transitionToClosedState();
+        }
+
+        assertTrue(body.contains("event:delta") && body.contains("event:done"), body);
+        Matcher sessionId = Pattern.compile("\"sessionId\":\"([^\"]+)\"").matcher(body);
+        assertTrue(sessionId.find(), body);
+        assertTrue(sessionStore.history(sessionId.group(1)).isEmpty());
+    }
+
+    @Test
+    void answersAnEmptyMessageWithASingleErrorEvent() throws Exception {
+        int calls = STUB.requestCount();
+        MvcResult started = mockMvc.perform(post("/api/chat-combined/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .content("{\"message\":\"<b></b>\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(body.startsWith("event:error"), body);
+        assertTrue(body.contains("Message cannot be empty"), body);
+        assertFalse(body.contains("sessionId"), body);
+        assertEquals(calls, STUB.requestCount());
+    }
+
+    private static OpenAIStubServer startStub() {
+        try {
+            return new OpenAIStubServer(4);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
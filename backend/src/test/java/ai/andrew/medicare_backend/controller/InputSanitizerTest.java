@@ -0,0 +1,40 @@
+package ai.andrew.medicare_backend.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InputSanitizerTest {
+
+    @Test
+    void returnsCleanTextAsIs() {
+        String message = "I have a headache and some nausea";
+
+        assertSame(message, InputSanitizer.sanitize(message));
+        assertEquals("pain < 5 out of 10", InputSanitizer.sanitize("pain < 5 out of 10"));
+        assertEquals("", InputSanitizer.sanitize(null));
+    }
+
+    @Test
+    void stripsTagsScriptsAndSurroundingWhitespace() {
+        assertEquals("I have a headache",
+                InputSanitizer.sanitize("  I have a <b>headache</b><SCRIPT type=\"x\">alert(1)\n</Script >  \n"));
+        assertEquals("fever", InputSanitizer.sanitize("<p> fever </p>"));
+        assertEquals("cough", InputSanitizer.sanitize("cough<script>never closed"));
+        assertEquals("", InputSanitizer.sanitize("<br/>"));
+    }
+
+    @Test
+    void capsTheLengthOfWhatIsLeft() {
+        // shorter than the cap once trimmed and stripped: used to throw
+        assertEquals("short", InputSanitizer.sanitize("short   "));
+        assertEquals("short", InputSanitizer.sanitize("<i>short</i>"));
+
+        String longText = "a".repeat(1500);
+        assertEquals(InputSanitizer.MAX_LENGTH, InputSanitizer.sanitize(longText).length());
+        assertEquals(InputSanitizer.MAX_LENGTH, InputSanitizer.sanitize("<b>" + longText).length());
+        assertEquals(InputSanitizer.MAX_LENGTH - 1,
+                InputSanitizer.sanitize("a".repeat(999) + "😀" + longText).length());
+    }
+}
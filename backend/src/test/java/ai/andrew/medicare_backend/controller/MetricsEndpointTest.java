@@ -0,0 +1,74 @@
+package ai.andrew.medicare_backend.controller;
+
+import ai.andrew.medicare_backend.stub.OpenAIStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsEndpointTest {
+
+    private static final OpenAIStubServer STUB = startStub();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void openAi(DynamicPropertyRegistry registry) {
+        registry.add("openai.api.key", () -> "test-key");
+        registry.add("openai.api.url", STUB::url);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void scrapeShowsEveryStageOfAChat() throws Exception {
+        mockMvc.perform(post("/api/chat-combined")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"message\":\"I have a sore throat and a runny nose\"}"))
+                .andExpect(status().isOk());
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(scrape.contains("chat_stage_seconds_bucket{endpoint=\"chat-combined\""), "chat.stage histogram");
+        assertTrue(scrape.contains("stage=\"ai_wait\""), "ai_wait stage");
+        assertTrue(scrape.contains("conditions_match_seconds_bucket"), "conditions.match histogram");
+        assertTrue(scrape.contains("conditions_matches_total{category=\"respiratory\",result=\"hit\""), scrape);
+        assertTrue(scrape.contains("openai_request_seconds_count{mode=\"blocking\",outcome=\"success\""), "openai.request");
+    }
+
+    @Test
+    void catalogReloadIsNotOnTheWeb() throws Exception {
+        mockMvc.perform(post("/actuator/catalog")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/actuator/catalog")).andExpect(status().isNotFound());
+    }
+
+    private static OpenAIStubServer startStub() {
+        try {
+            return new OpenAIStubServer(4);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
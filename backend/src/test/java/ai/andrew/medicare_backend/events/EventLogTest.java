@@ -0,0 +1,119 @@
+package ai.andrew.medicare_backend.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLogTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path dir;
+
+    private EventLog eventLog(int bufferSize, int batchSize, DataSize maxFileSize, int maxFiles) {
+        return new EventLog(meterRegistry, true, dir.resolve("logs/events.jsonl").toString(), bufferSize, batchSize,
+                Duration.ofMillis(10), maxFileSize, maxFiles);
+    }
+
+    private List<JsonNode> lines(Path file) throws IOException {
+        List<JsonNode> events = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            events.add(MAPPER.readTree(line));
+        }
+        return events;
+    }
+
+    @Test
+    void writesOneJsonLinePerEventTaggedWithTheSession() throws Exception {
+        EventLog events = eventLog(64, 16, DataSize.ofMegabytes(1), 2);
+        events.start();
+        events.match("s-1", "chat-combined", "Common cold");
+        events.upstream("s-1", "openai", "error", 1_234_567_890L, new SocketTimeoutException("Read timed out"));
+        events.request("s-1", "chat-combined", 200, "partial", 20_000_000_000L);
+        events.match(null, "chat-hf", null);
+        events.stop();
+
+        List<JsonNode> written = lines(dir.resolve("logs/events.jsonl"));
+        assertEquals(4, written.size());
+
+        JsonNode match = written.get(0);
+        assertEquals("match", match.get("type").asText());
+        assertEquals("s-1", match.get("session").asText());
+        assertEquals("hit", match.get("outcome").asText());
+        assertEquals("Common cold", match.get("condition").asText());
+        assertTrue(match.get("ts").asText().endsWith("Z"));
+
+        JsonNode upstream = written.get(1);
+        assertEquals("openai", upstream.get("name").asText());
+        assertEquals(1234.6, upstream.get("ms").asDouble());
+        assertEquals("java.net.SocketTimeoutException", upstream.get("error").asText());
+        assertEquals("Read timed out", upstream.get("message").asText());
+
+        JsonNode request = written.get(2);
+        assertEquals(200, request.get("status").asInt());
+        assertEquals("partial", request.get("outcome").asText());
+        assertFalse(request.has("error"));
+
+        assertFalse(written.get(3).has("session"));
+        assertEquals("miss", written.get(3).get("outcome").asText());
+        assertEquals(4.0, meterRegistry.get("events.written").counter().count());
+    }
+
+    @Test
+    void dropsAndCountsEventsWhenTheBufferIsFull() throws Exception {
+        EventLog events = eventLog(4, 16, DataSize.ofMegabytes(1), 2);
+        for (int i = 0; i < 6; i++) {
+            events.request("s-" + i, "chat-combined", 200, "ok", 1_000_000);
+        }
+        assertEquals(2.0, meterRegistry.get("events.dropped").counter().count());
+        assertEquals(4.0, meterRegistry.get("events.backlog").gauge().value());
+
+        // the writer catches up with what was kept, and there is room again
+        events.start();
+        events.stop();
+        events.request("s-6", "chat-combined", 200, "ok", 1_000_000);
+        assertEquals(1.0, meterRegistry.get("events.backlog").gauge().value());
+
+        List<JsonNode> written = lines(dir.resolve("logs/events.jsonl"));
+        assertEquals(List.of("s-0", "s-1", "s-2", "s-3"), written.stream().map(e -> e.get("session").asText()).toList());
+    }
+
+    @Test
+    void rotatesAtTheMaxFileSizeKeepingMaxFiles() throws Exception {
+        EventLog events = eventLog(256, 4, DataSize.ofBytes(400), 2);
+        events.start();
+        for (int i = 0; i < 100; i++) {
+            events.request("s-" + i, "chat-combined", 200, "ok", 1_000_000);
+        }
+        events.stop();
+
+        Path file = dir.resolve("logs/events.jsonl");
+        assertTrue(Files.exists(file.resolveSibling("events.jsonl.1")));
+        assertTrue(Files.exists(file.resolveSibling("events.jsonl.2")));
+        assertFalse(Files.exists(file.resolveSibling("events.jsonl.3")));
+        // the newest events come last, without gaps, across the rotated and current files
+        List<JsonNode> newest = lines(file.resolveSibling("events.jsonl.1"));
+        newest.addAll(lines(file));
+        for (int i = 0; i < newest.size(); i++) {
+            assertEquals("s-" + (100 - newest.size() + i), newest.get(i).get("session").asText());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ai.andrew.medicare_backend.interceptor;
+
+import ai.andrew.medicare_backend.config.RateLimitProperties;
+import ai.andrew.medicare_backend.config.RateLimitProperties.Limit;
+import ai.andrew.medicare_backend.service.ChatSessionStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RateLimitInterceptorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ChatSessionStore sessionStore;
+    private RateLimitInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sessionStore = new ChatSessionStore(meterRegistry, 100, Duration.ofMinutes(30), 1000);
+        interceptor = new RateLimitInterceptor(new RateLimitProperties(
+                new Limit(5, Duration.ofHours(1)),
+                Map.of("chat-combined", new Limit(2, Duration.ofHours(1))),
+                List.of("api-key", "session", "ip"),
+                Set.of("key-1"),
+                1000), sessionStore, meterRegistry);
+    }
+
+    @Test
+    void eachClientHasItsOwnQuota() throws Exception {
+        assertTrue(call("/api/chat-combined", "10.0.0.1", null).ok);
+        assertTrue(call("/api/chat-combined", "10.0.0.1", null).ok);
+        Call blocked = call("/api/chat-combined", "10.0.0.1", null);
+
+        assertFalse(blocked.ok);
+        assertEquals(429, blocked.response.getStatus());
+        assertTrue(Long.parseLong(blocked.response.getHeader("Retry-After")) > 0);
+        assertEquals(1.0, meterRegistry.get("ratelimit.rejected").tag("endpoint", "chat-combined").counter().count());
+
+        // another address, or an API key from the same address, still gets through
+        assertTrue(call("/api/chat-combined", "10.0.0.2", null).ok);
+        assertTrue(call("/api/chat-combined", "10.0.0.1", "key-1").ok);
+    }
+
+    @Test
+    void onlyKnownKeysAndIssuedSessionsGetTheirOwnQuota() throws Exception {
+        call("/api/chat-combined", "10.0.0.1", null);
+        call("/api/chat-combined", "10.0.0.1", null);
+
+        // made-up values are keyed by the address, which is exhausted
+        assertFalse(call("/api/chat-combined", "10.0.0.1", "key-2").ok);
+        assertFalse(call("/api/chat-combined", "10.0.0.1", null, "not-a-session").ok);
+        assertTrue(call("/api/chat-combined", "10.0.0.1", null, sessionStore.resolve(null)).ok);
+    }
+
+    @Test
+    void endpointsHaveSeparateLimits() throws Exception {
+        call("/api/chat-combined", "10.0.0.1", null);
+        Call stream = call("/api/chat-combined/stream", "10.0.0.1", null);
+        Call conditions = call("/api/conditions", "10.0.0.1", null);
+
+        // the stream shares chat-combined's bucket; other paths use the default limit
+        assertEquals("2", stream.response.getHeader(RateLimitInterceptor.LIMIT_HEADER));
+        assertEquals("0", stream.response.getHeader(RateLimitInterceptor.REMAINING_HEADER));
+        assertEquals("5", conditions.response.getHeader(RateLimitInterceptor.LIMIT_HEADER));
+        assertEquals("4", conditions.response.getHeader(RateLimitInterceptor.REMAINING_HEADER));
+        assertNull(conditions.response.getHeader("Retry-After"));
+    }
+
+    @Test
+    void endpointsMatchOnWholeSegments() {
+        assertEquals("chat-combined", interceptor.endpointFor("/api/chat-combined"));
+        assertEquals("chat-combined", interceptor.endpointFor("/api/chat-combined/stream"));
+        assertEquals("default", interceptor.endpointFor("/api/chat-combinedx"));
+        assertEquals("default", interceptor.endpointFor("/api/analyze-ml"));
+    }
+
+    @Test
+    void asyncRequestsTakeOneTokenNotOnePerDispatch() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AsyncController())
+                .addInterceptors(interceptor)
+                .build();
+
+        for (String remaining : new String[] {"1", "0"}) {
+            MvcResult started = mockMvc.perform(post("/api/chat-combined/stream"))
+                    .andExpect(request().asyncStarted())
+                    .andExpect(header().string(RateLimitInterceptor.REMAINING_HEADER, remaining))
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(started))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(RateLimitInterceptor.REMAINING_HEADER, remaining));
+        }
+        mockMvc.perform(post("/api/chat-combined/stream")).andExpect(status().isTooManyRequests());
+    }
+
+    @RestController
+    static class AsyncController {
+        @PostMapping("/api/chat-combined/stream")
+        Mono<String> stream() {
+            return Mono.just("ok");
+        }
+    }
+
+    private Call call(String path, String remoteAddr, String apiKey) throws Exception {
+        return call(path, remoteAddr, apiKey, null);
+    }
+
+    private Call call(String path, String remoteAddr, String apiKey, String sessionId) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr(remoteAddr);
+        if (apiKey != null) {
+            request.addHeader(RateLimitInterceptor.API_KEY_HEADER, apiKey);
+        }
+        if (sessionId != null) {
+            request.addHeader(RateLimitInterceptor.SESSION_HEADER, sessionId);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return new Call(interceptor.preHandle(request, response, null), response);
+    }
+
+    private record Call(boolean ok, MockHttpServletResponse response) { }
+}
@@ -0,0 +1,199 @@
+package ai.andrew.medicare_backend.load;
+
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.dto.SymptomRequest;
+import ai.andrew.medicare_backend.service.ConditionService;
+import ai.andrew.medicare_backend.service.TranslationService;
+import ai.andrew.medicare_backend.stub.LibreTranslateStubServer;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test for /api/analyze-ml against a LibreTranslate stub that takes 250 ms per call,
+ * with Tomcat limited to 16 worker threads.
+ *
+ * The same traffic is sent to the reactive endpoint and to a blocking copy of the old
+ * implementation (below), and the tail latency and the number of busy Tomcat
+ * threads (mean and peak, sampled every millisecond) are printed for both. Run with: ./gradlew loadTest
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"server.tomcat.threads.max=16", "server.tomcat.threads.min-spare=4",
+                "ratelimit.defaults.capacity=1000000", "ratelimit.endpoints.analyze-ml.capacity=1000000"})
+@Import(AnalyzeLoadTest.BlockingAnalyzeController.class)
+class AnalyzeLoadTest {
+
+    private static final int REQUESTS = 300;
+    private static final int CONCURRENCY = 64;
+    private static final Duration TRANSLATION_DELAY = Duration.ofMillis(250);
+
+    private static final LibreTranslateStubServer STUB = startStub();
+
+    @Autowired
+    private ServletWebServerApplicationContext context;
+
+    @DynamicPropertySource
+    static void translator(DynamicPropertyRegistry registry) {
+        registry.add("openai.api.key", () -> "test-key");
+        registry.add("libretranslate.url", STUB::url);
+        registry.add("translation.timeout", () -> "5s");
+        registry.add("translation.max-concurrency", () -> String.valueOf(CONCURRENCY));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void reactivePathUsesFewerThreadsAndHasALowerTail() throws Exception {
+        run("/api/load/analyze-blocking", "warmup-blocking", 50);
+        run("/api/analyze-ml", "warmup-reactive", 50);
+
+        Result blocking = run("/api/load/analyze-blocking", "blocking", REQUESTS);
+        Result reactive = run("/api/analyze-ml", "reactive", REQUESTS);
+
+        System.out.printf("%n%-10s %6s %8s %8s %8s %8s %10s %10s%n",
+                "path", "ok", "p50 ms", "p95 ms", "p99 ms", "max ms", "busy mean", "busy peak");
+        for (Result r : List.of(blocking, reactive)) {
+            System.out.printf("%-10s %6d %8d %8d %8d %8d %10.1f %10d%n", r.name, r.ok,
+                    r.percentile(50), r.percentile(95), r.percentile(99), r.percentile(100), r.meanBusyThreads, r.peakBusyThreads);
+        }
+
+        assertEquals(REQUESTS, blocking.ok);
+        assertEquals(REQUESTS, reactive.ok);
+        assertTrue(reactive.meanBusyThreads < blocking.meanBusyThreads / 2,
+                "reactive " + reactive.meanBusyThreads + " vs blocking " + blocking.meanBusyThreads);
+        assertTrue(reactive.percentile(99) < blocking.percentile(99),
+                "reactive p99 " + reactive.percentile(99) + " vs blocking p99 " + blocking.percentile(99));
+    }
+
+    private Result run(String path, String name, int requests) throws Exception {
+        URI uri = URI.create("http://localhost:" + context.getWebServer().getPort() + path + "?lang=es");
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        ThreadPoolExecutor tomcat = (ThreadPoolExecutor) ((TomcatWebServer) context.getWebServer())
+                .getTomcat().getConnector().getProtocolHandler().getExecutor();
+
+        AtomicInteger peakBusy = new AtomicInteger();
+        LongAdder busySum = new LongAdder();
+        LongAdder samples = new LongAdder();
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                int busy = tomcat.getActiveCount();
+                peakBusy.accumulateAndGet(busy, Math::max);
+                busySum.add(busy);
+                samples.increment();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long[] latencies = new long[requests];
+        AtomicInteger ok = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[requests];
+        for (int i = 0; i < requests; i++) {
+            int n = i;
+            // unique text per request, so every request waits on one real translation
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"text\":\"I have a headache (" + name + " " + n + ")\"}"))
+                    .build();
+            inFlight.acquire();
+            long start = System.nanoTime();
+            calls[i] = client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, error) -> {
+                        latencies[n] = (System.nanoTime() - start) / 1_000_000;
+                        if (error == null && response.statusCode() == 200 && response.body().contains("\"answer\"")) {
+                            ok.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+        }
+        CompletableFuture.allOf(calls).exceptionally(e -> null).join();
+        sampler.interrupt();
+        sampler.join();
+        return new Result(name, ok.get(), latencies,
+                (double) busySum.sum() / Math.max(1, samples.sum()), peakBusy.get());
+    }
+
+    private record Result(String name, int ok, long[] latencies, double meanBusyThreads, int peakBusyThreads) {
+        long percentile(int p) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+
+    private static LibreTranslateStubServer startStub() {
+        try {
+            return new LibreTranslateStubServer(128).delay(TRANSLATION_DELAY);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** The /api/analyze-ml implementation before it went reactive, kept here as the baseline. */
+    @RestController
+    static class BlockingAnalyzeController {
+
+        private final ConditionService conditionService;
+        private final TranslationService translator;
+
+        BlockingAnalyzeController(ConditionService conditionService, TranslationService translator) {
+            this.conditionService = conditionService;
+            this.translator = translator;
+        }
+
+        @PostMapping("/api/load/analyze-blocking")
+        ResponseEntity<?> analyze(@RequestBody SymptomRequest req, @RequestParam(defaultValue = "en") String lang) {
+            String english = lang.equals("en") ? req.text() : translator.toEnglish(req.text());
+            Condition hit = conditionService.keywordMatch(english);
+            if (hit == null) {
+                return ResponseEntity.ok(Map.of("followup",
+                        translator.fromEnglish(ConditionService.FOLLOW_UP_QUESTION, lang)));
+            }
+            String answer = lang.equals("en") ? hit.answerText() : translator.fromEnglish(hit.answerText(), lang);
+            return ResponseEntity.ok(Map.of("answer", answer,
+                    "rankedConditions", conditionService.rankConditions(english)));
+        }
+    }
+}
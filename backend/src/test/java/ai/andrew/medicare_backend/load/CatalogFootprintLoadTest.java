@@ -0,0 +1,118 @@
+package ai.andrew.medicare_backend.load;
+
+import ai.andrew.medicare_backend.catalog.CatalogSnapshot;
+import ai.andrew.medicare_backend.catalog.ConditionCatalog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Catalog startup cost, data.json vs. the compiled snapshot (data.catalog), for a
+ * synthetic catalog of 100k conditions shaped like data.json (shared medications,
+ * ingredients, red flags and categories; unique keywords and descriptions).
+ *
+ * Prints, per format: file size, the first load in this JVM (closest to a cold
+ * start), the median of the following loads, and the heap the loaded catalog
+ * retains (used heap after GC with the catalog held, minus without).
+ * Run with: ./gradlew loadTest
+ */
+@Tag("load")
+class CatalogFootprintLoadTest {
+
+    private static final int CONDITIONS = 100_000;
+    private static final int RUNS = 5;
+
+    private static final List<String> CATEGORIES = List.of("respiratory", "neurological", "digestive",
+            "musculoskeletal", "skin", "cardiac", "mental health", "allergy");
+    private static final List<String> SEVERITIES = List.of("mild", "mild-moderate", "moderate", "severe");
+    private static final List<String> INGREDIENTS = List.of("acetaminophen", "ibuprofen", "naproxen",
+            "dextromethorphan", "guaifenesin", "loratadine", "diphenhydramine", "bismuth subsalicylate");
+    private static final List<String> RED_FLAGS = List.of("difficulty breathing", "chest pain", "confusion",
+            "fever > 102°F for 3+ days", "severe headache", "blood in stool", "fainting", "vision changes");
+
+    @Test
+    void snapshotLoadsFasterAndRetainsLess() throws Exception {
+        byte[] json = new ObjectMapper().writeValueAsBytes(rows());
+        ConditionCatalog reference = ConditionCatalog.read(new ByteArrayInputStream(json));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CatalogSnapshot.write(reference, out);
+        byte[] snapshot = out.toByteArray();
+        reference = null;
+
+        Result fromJson = measure("data.json", json.length, () -> ConditionCatalog.read(new ByteArrayInputStream(json)));
+        Result fromSnapshot = measure("data.catalog", snapshot.length, () -> CatalogSnapshot.read(snapshot));
+
+        System.out.printf("%n%-13s %10s %10s %10s %12s%n", "format", "file KB", "first ms", "median ms", "retained MB");
+        for (Result r : List.of(fromJson, fromSnapshot)) {
+            System.out.printf("%-13s %10d %10d %10d %12.1f%n", r.name, r.fileBytes / 1024,
+                    r.firstMs, r.medianMs, r.retainedBytes / (1024.0 * 1024.0));
+        }
+
+        assertTrue(fromSnapshot.medianMs < fromJson.medianMs,
+                "snapshot " + fromSnapshot.medianMs + " ms vs json " + fromJson.medianMs + " ms");
+        assertTrue(fromSnapshot.retainedBytes < fromJson.retainedBytes,
+                "snapshot " + fromSnapshot.retainedBytes + " B vs json " + fromJson.retainedBytes + " B");
+    }
+
+    private static Result measure(String name, int fileBytes, Callable<ConditionCatalog> load) throws Exception {
+        long[] ms = new long[RUNS + 1];
+        for (int i = 0; i <= RUNS; i++) {
+            long start = System.nanoTime();
+            assertEquals(CONDITIONS, load.call().size());
+            ms[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        long[] warm = Arrays.copyOfRange(ms, 1, ms.length);
+        Arrays.sort(warm);
+
+        long before = usedHeapAfterGc();
+        ConditionCatalog held = load.call();
+        long retained = usedHeapAfterGc() - before;
+        Reference.reachabilityFence(held);
+        return new Result(name, fileBytes, ms[0], warm[warm.length / 2], retained);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static List<Map<String, Object>> rows() {
+        List<Map<String, Object>> rows = new ArrayList<>(CONDITIONS);
+        for (int i = 0; i < CONDITIONS; i++) {
+            String ingredient = INGREDIENTS.get(i % INGREDIENTS.size());
+            rows.add(Map.of(
+                    "keywords", List.of("symptom " + i, "sign " + i, "complaint " + i),
+                    "condition", "Condition " + i,
+                    "severity", SEVERITIES.get(i % SEVERITIES.size()),
+                    "category", CATEGORIES.get(i % CATEGORIES.size()),
+                    "medication", List.of(Map.of(
+                            "name", "Brand " + (i % 50),
+                            "ingredients", List.of(ingredient, INGREDIENTS.get((i + 3) % INGREDIENTS.size())),
+                            "dosage", "Follow package instructions",
+                            "warnings", List.of("Do not exceed recommended dose", "Avoid alcohol"))),
+                    "advice", "Rest, stay hydrated and see a doctor if it gets worse.",
+                    "red_flags", List.of(RED_FLAGS.get(i % RED_FLAGS.size()), RED_FLAGS.get((i + 1) % RED_FLAGS.size())),
+                    "duration", "3-7 days",
+                    "description", "Synthetic condition number " + i + " for measuring catalog load cost."));
+        }
+        return rows;
+    }
+
+    private record Result(String name, int fileBytes, long firstMs, long medianMs, long retainedBytes) { }
+}
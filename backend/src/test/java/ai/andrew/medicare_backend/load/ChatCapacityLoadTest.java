@@ -0,0 +1,131 @@
+package ai.andrew.medicare_backend.load;
+
+import ai.andrew.medicare_backend.Application;
+import ai.andrew.medicare_backend.stub.OpenAIStubServer;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * How many /api/chat-hf calls one instance keeps in flight at once, on platform threads
+ * and on virtual threads, when OpenAI (a local stub) takes a second to answer.
+ *
+ * 1000 clients call at once. On platform threads the Tomcat pool (200 threads) caps how
+ * many reach OpenAI together; on virtual threads every request gets its own thread and
+ * only the OpenAI connection pool (raised to 2000 here) limits it. The virtual run also
+ * records jdk.VirtualThreadPinned events and fails if any request pinned its carrier.
+ *
+ * The virtual run needs a Java 21 runtime: ./gradlew loadTest -PloadTest.java=21
+ */
+@Tag("load")
+class ChatCapacityLoadTest {
+
+    private static final int CLIENTS = 1000;
+    private static final Duration OPENAI_LATENCY = Duration.ofSeconds(1);
+
+    private static final Map<String, String> REPORT = new TreeMap<>();
+
+    @AfterAll
+    static void printReport() {
+        System.out.printf("%n%-9s %8s %10s %9s %8s%n", "threads", "ok", "in flight", "total ms", "pinned");
+        REPORT.values().forEach(System.out::println);
+    }
+
+    @Test
+    void platformThreads() throws Exception {
+        Result result = run(false);
+
+        assertEquals(CLIENTS, result.ok);
+        assertTrue(result.peakInFlight <= 200, "in flight " + result.peakInFlight);
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreads() throws Exception {
+        AtomicInteger pinned = new AtomicInteger();
+        Result result;
+        try (RecordingStream pinning = new RecordingStream()) {
+            pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(20)).withStackTrace();
+            pinning.onEvent("jdk.VirtualThreadPinned", event -> {
+                pinned.incrementAndGet();
+                System.out.println("Pinned: " + event);
+            });
+            pinning.startAsync();
+            result = run(true);
+        }
+        REPORT.computeIfPresent("virtual", (mode, row) -> row + String.format(" %8d", pinned.get()));
+
+        assertEquals(CLIENTS, result.ok);
+        assertTrue(result.peakInFlight > 200, "in flight " + result.peakInFlight);
+        assertEquals(0, pinned.get());
+    }
+
+    private Result run(boolean virtual) throws Exception {
+        try (OpenAIStubServer stub = new OpenAIStubServer(CLIENTS + 100)) {
+            stub.delay(OPENAI_LATENCY);
+            // command-line arguments, so they win over application.properties
+            ConfigurableApplicationContext app = new SpringApplicationBuilder(Application.class).run(
+                    "--server.port=0",
+                    "--spring.threads.virtual.enabled=" + virtual,
+                    "--server.tomcat.threads.max=200",
+                    "--openai.api.key=test-key",
+                    "--openai.api.url=" + stub.url(),
+                    "--openai.cache.enabled=false",
+                    "--openai.http.max-connections=2000",
+                    "--openai.http.pool-acquire-timeout=60s",
+                    "--openai.admission.enabled=false", // measures the threads, not the admission limit
+                    "--ratelimit.endpoints.chat-hf.capacity=1000000");
+            try {
+                int port = ((ServletWebServerApplicationContext) app).getWebServer().getPort();
+                URI uri = URI.create("http://localhost:" + port + "/api/chat-hf");
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+                AtomicInteger ok = new AtomicInteger();
+                long start = System.nanoTime();
+                CompletableFuture<?>[] calls = new CompletableFuture<?>[CLIENTS];
+                for (int i = 0; i < CLIENTS; i++) {
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .timeout(Duration.ofSeconds(60))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"message\":\"I have a headache, day " + i + "\"}"))
+                            .build();
+                    calls[i] = client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                            .thenAccept(response -> {
+                                if (response.statusCode() == 200 && response.body().contains("\"response\"")) {
+                                    ok.incrementAndGet();
+                                }
+                            });
+                }
+                CompletableFuture.allOf(calls).exceptionally(e -> null).join();
+                long totalMs = (System.nanoTime() - start) / 1_000_000;
+
+                String mode = virtual ? "virtual" : "platform";
+                REPORT.put(mode, String.format("%-9s %8d %10d %9d", mode, ok.get(), stub.peakInFlight(), totalMs));
+                return new Result(ok.get(), stub.peakInFlight());
+            } finally {
+                app.close();
+            }
+        }
+    }
+
+    private record Result(int ok, int peakInFlight) { }
+}
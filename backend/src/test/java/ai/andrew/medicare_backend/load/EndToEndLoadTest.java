@@ -0,0 +1,168 @@
+package ai.andrew.medicare_backend.load;
+
+import ai.andrew.medicare_backend.stub.ErrorProfile;
+import ai.andrew.medicare_backend.stub.LatencyProfile;
+import ai.andrew.medicare_backend.stub.LibreTranslateStubServer;
+import ai.andrew.medicare_backend.stub.OpenAIStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load scenarios for /api/chat-hf, /api/chat-combined and /api/analyze-ml
+ * (Spanish, so both translations happen), entirely offline: OpenAI and LibreTranslate
+ * are the local stubs, with log-normal latencies and a share of errors, and the OpenAI
+ * stub answers some requests with symptom_checker function calls.
+ *
+ * Messages cycle through a script of routine, moderate and red-flag symptoms (so
+ * admission control sees every priority) and are all distinct, so no cache answers.
+ * Prints one row per scenario: requests sent, ok, throughput, latency percentiles and
+ * the answers by status (0 = no answer). Run with:
+ *
+ *   ./gradlew loadTest --tests '*EndToEndLoadTest'
+ *
+ * Every knob below is a -P property, e.g. for a capacity run:
+ *
+ *   ./gradlew loadTest --tests '*EndToEndLoadTest' -Pload.requests=5000 -Pload.concurrency=200
+ *       -Pload.openai.median=1500ms -Pload.openai.p99=8s -Pload.openai.error-rate=0.05
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"openai.cache.enabled=false",
+                "ratelimit.defaults.capacity=100000000", "ratelimit.endpoints.chat-hf.capacity=100000000",
+                "ratelimit.endpoints.chat-combined.capacity=100000000",
+                "ratelimit.endpoints.analyze-ml.capacity=100000000"})
+class EndToEndLoadTest {
+
+    private static final int REQUESTS = Integer.getInteger("load.requests", 300);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 32);
+    private static final int WARMUP = Integer.getInteger("load.warmup", 30);
+
+    private static final Duration OPENAI_MEDIAN = duration("load.openai.median", "800ms");
+    private static final Duration OPENAI_P99 = duration("load.openai.p99", "4s");
+    private static final double OPENAI_ERROR_RATE = rate("load.openai.error-rate", "0.02");
+    private static final double FUNCTION_CALL_RATE = rate("load.openai.function-call-rate", "0.1");
+    private static final Duration TRANSLATE_MEDIAN = duration("load.translate.median", "60ms");
+    private static final Duration TRANSLATE_P99 = duration("load.translate.p99", "400ms");
+    private static final double TRANSLATE_ERROR_RATE = rate("load.translate.error-rate", "0.01");
+
+    private static final List<String> SCRIPT = List.of(
+            "I have a sore throat and a runny nose",
+            "headache and nausea since this morning",
+            "chest pain and shortness of breath",
+            "heartburn after dinner every night",
+            "frequent urination and burning urination",
+            "what does Medicare Part D cover",
+            "I feel dizzy when I stand up",
+            "sore throat and difficulty breathing",
+            "muscle pain and fever with body aches",
+            "itchy eyes and sneezing all spring");
+
+    private static final OpenAIStubServer OPENAI = startOpenAi();
+    private static final LibreTranslateStubServer TRANSLATOR = startTranslator();
+
+    @Autowired
+    private ServletWebServerApplicationContext context;
+
+    @DynamicPropertySource
+    static void stubs(DynamicPropertyRegistry registry) {
+        registry.add("openai.api.key", () -> "test-key");
+        registry.add("openai.api.url", OPENAI::url);
+        registry.add("libretranslate.url", TRANSLATOR::url);
+    }
+
+    @AfterAll
+    static void stopStubs() {
+        OPENAI.close();
+        TRANSLATOR.close();
+    }
+
+    @Test
+    void chatAndAnalyzeScenarios() throws Exception {
+        List<LoadScenario> scenarios = List.of(
+                new LoadScenario("chat-hf", "/api/chat-hf",
+                        n -> "{\"message\":\"" + message(n) + "\"}", body -> body.contains("\"response\"")),
+                new LoadScenario("chat-combined", "/api/chat-combined",
+                        n -> "{\"message\":\"" + message(n) + "\"}", body -> body.contains("\"aiResponse\"")),
+                new LoadScenario("analyze-ml", "/api/analyze-ml?lang=es",
+                        n -> "{\"text\":\"" + message(n) + "\"}",
+                        body -> body.contains("\"answer\"") || body.contains("\"followup\"")));
+
+        String baseUrl = "http://localhost:" + context.getWebServer().getPort();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        List<LoadScenario.Report> reports = new ArrayList<>();
+        for (LoadScenario scenario : scenarios) {
+            scenario.run(client, baseUrl, WARMUP, Math.min(WARMUP, CONCURRENCY));
+            reports.add(scenario.run(client, baseUrl, REQUESTS, CONCURRENCY));
+        }
+
+        System.out.printf("%n%d requests per scenario, %d in flight; OpenAI median %d ms, p99 %d ms, "
+                        + "%.1f%% errors, %.0f%% function calls; LibreTranslate median %d ms, p99 %d ms, %.1f%% errors%n",
+                REQUESTS, CONCURRENCY, OPENAI_MEDIAN.toMillis(), OPENAI_P99.toMillis(), OPENAI_ERROR_RATE * 100,
+                FUNCTION_CALL_RATE * 100, TRANSLATE_MEDIAN.toMillis(), TRANSLATE_P99.toMillis(), TRANSLATE_ERROR_RATE * 100);
+        System.out.println(LoadScenario.Report.HEADER);
+        reports.forEach(System.out::println);
+        System.out.println("OpenAI stub answers by status: " + OPENAI.responsesByStatus());
+
+        for (LoadScenario.Report report : reports) {
+            assertEquals(0, report.count(0), report.name() + " requests went unanswered");
+            // 503 is admission control shedding load; anything else is a bug
+            assertTrue(Set.of(200, 503).containsAll(report.statuses().keySet()), report.toString());
+            assertTrue(report.ok() > 0, report.toString());
+        }
+        // translation failures fall back to English, so analyze-ml always answers
+        assertEquals(REQUESTS, reports.get(2).ok(), reports.get(2).toString());
+    }
+
+    private static String message(int n) {
+        return SCRIPT.get(n % SCRIPT.size()) + " (visit " + n + ")";
+    }
+
+    private static OpenAIStubServer startOpenAi() {
+        try {
+            // OpenAI's usual errors: mostly overload (503), some rate limiting (429)
+            return new OpenAIStubServer(512)
+                    .latency(LatencyProfile.logNormal(OPENAI_MEDIAN, OPENAI_P99))
+                    .errors(new ErrorProfile(Map.of(503, OPENAI_ERROR_RATE * 0.7, 429, OPENAI_ERROR_RATE * 0.3)))
+                    .functionCalls(FUNCTION_CALL_RATE)
+                    .chunkInterval(Duration.ofMillis(20));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static LibreTranslateStubServer startTranslator() {
+        try {
+            return new LibreTranslateStubServer(256)
+                    .latency(LatencyProfile.logNormal(TRANSLATE_MEDIAN, TRANSLATE_P99))
+                    .errors(ErrorProfile.of(500, TRANSLATE_ERROR_RATE));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+
+    private static double rate(String property, String defaultValue) {
+        return Double.parseDouble(System.getProperty(property, defaultValue));
+    }
+}
@@ -0,0 +1,110 @@
+package ai.andrew.medicare_backend.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * One scripted load scenario: POSTs {@code body.apply(n)} to {@code path} for request
+ * n = 0, 1, ..., keeping {@code concurrency} requests in flight (a closed loop, like that
+ * many clients each sending their next request as soon as the last one is answered).
+ *
+ * The {@link Report} has the throughput, latency percentiles and the answers by status;
+ * a request counts as ok if it got a 200 that {@code ok} accepts.
+ */
+final class LoadScenario {
+
+    private final String name;
+    private final String path;
+    private final IntFunction<String> body;
+    private final Predicate<String> ok;
+
+    LoadScenario(String name, String path, IntFunction<String> body, Predicate<String> ok) {
+        this.name = name;
+        this.path = path;
+        this.body = body;
+        this.ok = ok;
+    }
+
+    String name() {
+        return name;
+    }
+
+    Report run(HttpClient client, String baseUrl, int requests, int concurrency) throws InterruptedException {
+        URI uri = URI.create(baseUrl + path);
+        long[] latencies = new long[requests];
+        AtomicInteger okCount = new AtomicInteger();
+        Map<Integer, AtomicInteger> byStatus = new ConcurrentHashMap<>();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[requests];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int n = i;
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofSeconds(60))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.apply(n)))
+                    .build();
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            calls[i] = client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, error) -> {
+                        latencies[n] = System.nanoTime() - sent;
+                        // status 0: no answer at all (connection error or client timeout)
+                        int status = error == null ? response.statusCode() : 0;
+                        byStatus.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+                        if (status == 200 && ok.test(response.body())) {
+                            okCount.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+        }
+        CompletableFuture.allOf(calls).exceptionally(e -> null).join();
+        long elapsed = System.nanoTime() - start;
+
+        Map<Integer, Integer> statuses = new TreeMap<>();
+        byStatus.forEach((status, count) -> statuses.put(status, count.get()));
+        Arrays.sort(latencies);
+        return new Report(name, requests, okCount.get(), statuses, elapsed, latencies);
+    }
+
+    /** Results of one run; {@code sortedLatencies} in nanoseconds, ascending. */
+    record Report(String name, int requests, int ok, Map<Integer, Integer> statuses, long elapsedNanos,
+                  long[] sortedLatencies) {
+
+        static final String HEADER = String.format("%-14s %6s %6s %8s %8s %8s %8s %8s %8s  %s",
+                "scenario", "sent", "ok", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+
+        double throughput() {
+            return requests / (elapsedNanos / 1e9);
+        }
+
+        double percentileMillis(double p) {
+            int index = (int) Math.ceil(p / 100.0 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, index)] / 1e6;
+        }
+
+        int count(int status) {
+            return statuses.getOrDefault(status, 0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-14s %6d %6d %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f  %s", name, requests, ok,
+                    throughput(), percentileMillis(50), percentileMillis(90), percentileMillis(99),
+                    percentileMillis(99.9), percentileMillis(100), statuses);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ai.andrew.medicare_backend.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold starts, one mode after another: starts the app, POSTs /api/analyze-ml every few
+ * milliseconds until one is answered with 200, then reads the process's resident memory
+ * and stops it. Modes whose build output is missing are skipped:
+ *
+ *   jar     : the bootJar, as deployed today
+ *   aot     : the thin jar in build/cds with -Dspring.aot.enabled=true
+ *   aot+cds : the same, with the AppCDS archive (cdsArchive)
+ *   native  : the GraalVM native image (nativeCompile)
+ *
+ * Reports the median, min and max time from process start to the first answer, and the
+ * median RSS at that point, over startup.runs starts (default 5):
+ *
+ *   ./gradlew -PfastStartup nativeCompile startupBenchmark -Pstartup.runs=10
+ */
+public final class StartupBenchmark {
+
+    private static final String BODY = "{\"text\":\"I have a headache and nausea since this morning\"}";
+    private static final Duration GIVE_UP = Duration.ofMinutes(2);
+
+    record Mode(String name, Path workingDir, List<String> command) { }
+
+    record Start(long firstAnswerNanos, long rssKb) { }
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = Integer.getInteger("startup.runs", 5);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(200))
+                .build();
+
+        System.out.printf("%n%-8s %5s %14s %8s %8s %8s%n", "mode", "runs", "1st answer ms", "min ms", "max ms", "RSS MB");
+        for (Mode mode : modes()) {
+            start(client, mode); // first start warms the disk cache, not counted
+            long[] times = new long[runs];
+            long[] rss = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                Start start = start(client, mode);
+                times[i] = start.firstAnswerNanos();
+                rss[i] = start.rssKb();
+            }
+            Arrays.sort(times);
+            Arrays.sort(rss);
+            System.out.printf("%-8s %5d %14.0f %8.0f %8.0f %8.1f%n", mode.name(), runs, times[runs / 2] / 1e6,
+                    times[0] / 1e6, times[runs - 1] / 1e6, rss[runs / 2] / 1024.0);
+        }
+    }
+
+    static List<Mode> modes() {
+        String java = System.getProperty("startup.java",
+                Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        List<Mode> modes = new ArrayList<>();
+
+        Path jar = Path.of(System.getProperty("startup.jar", "build/libs/app.jar"));
+        if (Files.exists(jar)) {
+            modes.add(new Mode("jar", jar.toAbsolutePath().getParent(), List.of(java, "-jar", jar.toString())));
+        }
+        // the archive is only valid with the class path it was dumped with, so the same
+        // relative jar path from the same directory as the training run
+        Path cds = Path.of(System.getProperty("startup.cds.dir", "build/cds"));
+        if (Files.exists(cds.resolve("medicare-backend.jar"))) {
+            modes.add(new Mode("aot", cds, List.of(java, "-Dspring.aot.enabled=true", "-jar", "medicare-backend.jar")));
+            if (Files.exists(cds.resolve("app.jsa"))) {
+                modes.add(new Mode("aot+cds", cds, List.of(java, "-XX:SharedArchiveFile=app.jsa",
+                        "-Dspring.aot.enabled=true", "-jar", "medicare-backend.jar")));
+            }
+        }
+        Path image = Path.of(System.getProperty("startup.native", "build/native/nativeCompile/medicare-backend"));
+        if (Files.isExecutable(image)) {
+            modes.add(new Mode("native", image.toAbsolutePath().getParent(), List.of(image.toString())));
+        }
+        if (modes.isEmpty()) {
+            throw new IllegalStateException("Nothing to start; build the bootJar first (./gradlew startupBenchmark)");
+        }
+        return modes;
+    }
+
+    static Start start(HttpClient client, Mode mode) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>(mode.command());
+        command.addAll(List.of("--server.port=" + port, "--events.enabled=false"));
+        File log = File.createTempFile("startup-" + mode.name().replace('+', '-') + "-", ".log");
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(mode.workingDir().toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log);
+        builder.environment().putIfAbsent("OPENAI_API_KEY", "startup-benchmark");
+
+        HttpRequest analyze = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/analyze-ml"))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(BODY))
+                .build();
+
+        long started = System.nanoTime();
+        Process process = builder.start();
+        try {
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode.name() + " exited with " + process.exitValue() + ", see " + log);
+                }
+                if (System.nanoTime() - started > GIVE_UP.toNanos()) {
+                    throw new IllegalStateException(mode.name() + " did not answer within " + GIVE_UP + ", see " + log);
+                }
+                try {
+                    if (client.send(analyze, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        Start start = new Start(System.nanoTime() - started, residentKb(process.pid()));
+                        Files.delete(log.toPath()); // kept when the start fails
+                        return start;
+                    }
+                } catch (IOException notListeningYet) {
+                    // connection refused until the server is up
+                }
+                Thread.sleep(5);
+            }
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    /** VmRSS from /proc on Linux; ps elsewhere. */
+    static long residentKb(long pid) throws IOException, InterruptedException {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        }
+        Process ps = new ProcessBuilder("ps", "-o", "rss=", "-p", Long.toString(pid)).start();
+        String out = new String(ps.getInputStream().readAllBytes()).trim();
+        ps.waitFor();
+        return out.isEmpty() ? 0 : Long.parseLong(out);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.service.ChatSessionStore.Turn;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatSessionStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void keepsTurnsOfAKnownSessionAndStartsUnknownOnesFresh() {
+        ChatSessionStore store = new ChatSessionStore(meterRegistry, 10, Duration.ofMinutes(30), 1000);
+
+        String id = store.resolve(null);
+        store.record(id, "I have a headache", "Oh no! How long has it lasted?");
+
+        assertEquals(id, store.resolve(id));
+        assertEquals(List.of(new Turn("user", "I have a headache"),
+                        new Turn("assistant", "Oh no! How long has it lasted?")),
+                store.history(id));
+
+        String unknown = store.resolve("not-a-session");
+        assertNotEquals("not-a-session", unknown);
+        assertTrue(store.history(unknown).isEmpty());
+    }
+
+    @Test
+    void dropsTheOldestTurnsOverTheTokenBudget() {
+        String message = "x".repeat(96); // about 30 tokens per message, 37 per exchange
+        ChatSessionStore store = new ChatSessionStore(meterRegistry, 10, Duration.ofMinutes(30), 60);
+
+        String id = store.resolve(null);
+        store.record(id, "first " + message, "first reply");
+        store.record(id, "second " + message, "second reply");
+
+        List<Turn> history = store.history(id);
+        int tokens = history.stream().mapToInt(turn -> ChatSessionStore.estimateTokens(turn.content())).sum();
+        assertTrue(tokens <= 60, "tokens " + tokens);
+        assertEquals(List.of(new Turn("user", "second " + message), new Turn("assistant", "second reply")), history);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSessionWhenFull() {
+        ChatSessionStore store = new ChatSessionStore(meterRegistry, 2, Duration.ofMinutes(30), 1000);
+
+        String a = store.resolve(null);
+        String b = store.resolve(null);
+        store.resolve(a); // a is now more recent than b
+        store.resolve(null);
+
+        assertEquals(a, store.resolve(a));
+        assertNotEquals(b, store.resolve(b));
+        assertEquals(2, store.size());
+        assertTrue(meterRegistry.get("chat.sessions.evicted").tag("reason", "capacity").counter().count() >= 1);
+    }
+
+    @Test
+    void expiresIdleSessions() throws Exception {
+        ChatSessionStore store = new ChatSessionStore(meterRegistry, 10, Duration.ofMillis(50), 1000);
+
+        String id = store.resolve(null);
+        Thread.sleep(100);
+
+        assertNotEquals(id, store.resolve(id));
+        assertEquals(1, store.size());
+        assertEquals(1.0, meterRegistry.get("chat.sessions.evicted").tag("reason", "idle").counter().count());
+    }
+}
@@ -0,0 +1,117 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.catalog.CatalogSnapshot;
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.catalog.ConditionCatalog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConditionServiceTest {
+
+    private ConditionService service;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new ConditionService(meterRegistry);
+        service.init();
+    }
+
+    @Test
+    void keywordMatchKeepsFirstRowSemantics() {
+        for (String text : List.of(
+                "I have a headache and some nausea",
+                "sore throat and a runny nose since Monday",
+                "My lower back hurts and I have a HEADACHE",
+                "feeling fine, just checking in",
+                "")) {
+            assertEquals(naiveFirstMatch(text), service.keywordMatch(text), text);
+        }
+    }
+
+    @Test
+    void keywordMatchReturnsNullWithoutKeywords() {
+        assertNull(service.keywordMatch("nothing relevant here"));
+    }
+
+    @Test
+    void keywordMatchToleratesTyposAfterAnExactMiss() {
+        assertEquals(naiveFirstMatch("headache"), service.keywordMatch("I have a bad head ache"));
+        assertEquals(naiveFirstMatch("nausea"), service.keywordMatch("some nausia since lunch"));
+        assertEquals(naiveFirstMatch("stuffy nose"), service.keywordMatch("stuffy-nose all week"));
+        assertNull(service.keywordMatch("I never had this before"));
+        assertEquals(4.0, meterRegistry.get("conditions.match.fuzzy").timer().count());
+
+        ReflectionTestUtils.setField(service, "fuzzyEnabled", false);
+        assertNull(service.keywordMatch("some nausia since lunch"));
+    }
+
+    @Test
+    void keywordMatchAllReturnsEveryMatchingRowInOrder() {
+        List<Condition> all = service.keywordMatchAll("headache and nausea, also sneezing");
+
+        assertTrue(all.size() > 1);
+        assertEquals(naiveFirstMatch("headache and nausea, also sneezing"), all.get(0));
+    }
+
+    @Test
+    void reloadSwapsInTheNewCatalogAndKeepsItOnFailure(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("data.json");
+        Files.writeString(file, """
+                [{"keywords":["hiccups"],"condition":"Hiccups","advice":"Sip cold water."}]
+                """);
+        ReflectionTestUtils.setField(service, "catalogPath", file.toString());
+
+        service.reload();
+        assertEquals("Hiccups", service.keywordMatch("I have the hiccups").name());
+        assertNull(service.keywordMatch("headache"));
+
+        ConditionService.Snapshot good = service.snapshot();
+        Files.writeString(file, "[{ not json");
+        assertThrows(IOException.class, service::reload);
+
+        assertSame(good, service.snapshot());
+        assertEquals(1.0, meterRegistry.get("catalog.reload.failures").counter().count());
+        assertEquals(2, meterRegistry.get("catalog.reload").tag("outcome", "success").timer().count());
+        assertEquals(1.0, meterRegistry.get("catalog.conditions").gauge().value());
+    }
+
+    @Test
+    void loadsACompiledSnapshotFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("data.catalog");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            CatalogSnapshot.write(service.catalog(), out);
+        }
+        ConditionCatalog fromJson = service.catalog();
+        ReflectionTestUtils.setField(service, "catalogPath", file.toString());
+
+        service.reload();
+
+        assertEquals(fromJson.conditions(), service.catalog().conditions());
+        assertEquals(naiveFirstMatch("headache and nausea"), service.keywordMatch("headache and nausea"));
+    }
+
+    private Condition naiveFirstMatch(String userText) {
+        String lower = userText.toLowerCase();
+        return service.catalog().conditions().stream()
+                      .filter(row -> row.keywords().stream().anyMatch(lower::contains))
+                      .findFirst()
+                      .orElse(null);
+    }
+}
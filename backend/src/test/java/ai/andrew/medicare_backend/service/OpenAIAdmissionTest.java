@@ -0,0 +1,165 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.service.OpenAIAdmission.Permit;
+import ai.andrew.medicare_backend.service.OpenAIAdmission.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAIAdmissionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /** Limit fixed at {@code limit}; routine calls may wait 1s, the others 2s. */
+    private OpenAIAdmission admission(int limit, int maxQueue, int routineMaxQueue) {
+        return new OpenAIAdmission(meterRegistry, true, limit, limit, limit, 0.9, Duration.ofSeconds(10),
+                maxQueue, routineMaxQueue, Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(2),
+                Duration.ofSeconds(3));
+    }
+
+    private CompletableFuture<Permit> later(OpenAIAdmission admission, Priority priority) {
+        return admission.acquireLater(priority).toFuture();
+    }
+
+    private double shed(String priority, String reason) {
+        var counter = meterRegistry.find("openai.admission.shed").tag("priority", priority).tag("reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void prioritizesSevereMatchesAndMentionedRedFlags() throws Exception {
+        ConditionService conditions = new ConditionService(new SimpleMeterRegistry());
+        conditions.init();
+
+        assertEquals(Priority.URGENT, priorityOf(conditions, "chest pain, can't breathe"));
+        assertEquals(Priority.URGENT, priorityOf(conditions, "sore throat and difficulty breathing"));
+        assertEquals(Priority.ELEVATED, priorityOf(conditions, "headache and nausea"));
+        assertEquals(Priority.ROUTINE, priorityOf(conditions, "sore throat and a runny nose"));
+        assertEquals(Priority.ROUTINE, priorityOf(conditions, "what is Medicare Part B?"));
+    }
+
+    private static Priority priorityOf(ConditionService conditions, String message) {
+        return Priority.of(message, conditions.keywordMatch(message));
+    }
+
+    @Test
+    void admitsWaitersByPriorityThenArrival() throws Exception {
+        OpenAIAdmission admission = admission(1, 10, 10);
+        Permit held = admission.acquire(Priority.ROUTINE);
+
+        List<CompletableFuture<Permit>> waiting = new ArrayList<>();
+        for (Priority priority : List.of(Priority.ROUTINE, Priority.ELEVATED, Priority.URGENT, Priority.URGENT)) {
+            waiting.add(later(admission, priority));
+        }
+        assertEquals(4, admission.queued());
+
+        List<Integer> order = new ArrayList<>();
+        held.onSuccess();
+        for (int i = 0; i < waiting.size(); i++) {
+            for (int w = 0; w < waiting.size(); w++) {
+                if (waiting.get(w).isDone() && !order.contains(w)) {
+                    order.add(w);
+                    waiting.get(w).get().onSuccess();
+                }
+            }
+        }
+        assertEquals(List.of(2, 3, 1, 0), order);
+        assertEquals(0, admission.inFlight());
+        assertEquals(2, meterRegistry.get("openai.admission.wait").tag("priority", "urgent").timer().count());
+        assertEquals(2, meterRegistry.get("openai.admission.wait").tag("priority", "routine").timer().count());
+    }
+
+    @Test
+    void shedsRoutineCallsEarlyAndEvictsThemForUrgentOnes() throws Exception {
+        OpenAIAdmission admission = admission(1, 2, 1);
+        admission.acquire(Priority.ROUTINE);
+
+        CompletableFuture<Permit> routine = later(admission, Priority.ROUTINE);
+        OpenAIAdmission.Rejected early = assertThrows(OpenAIAdmission.Rejected.class,
+                () -> admission.acquire(Priority.ROUTINE));
+        assertEquals(Priority.ROUTINE, early.priority());
+        assertEquals(Duration.ofSeconds(3), early.retryAfter());
+
+        CompletableFuture<Permit> elevated = later(admission, Priority.ELEVATED);
+        CompletableFuture<Permit> urgent = later(admission, Priority.URGENT);
+
+        ExecutionException evicted = assertThrows(ExecutionException.class, () -> routine.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(OpenAIAdmission.Rejected.class, evicted.getCause());
+        assertThrows(OpenAIAdmission.Rejected.class, () -> admission.acquire(Priority.ELEVATED));
+        assertFalse(elevated.isDone());
+        assertFalse(urgent.isDone());
+        assertEquals(2, admission.queued());
+
+        assertEquals(1, shed("routine", "queue_full"));
+        assertEquals(1, shed("routine", "evicted"));
+        assertEquals(1, shed("elevated", "queue_full"));
+        assertEquals(2.0, meterRegistry.get("openai.admission.queue").gauge().value());
+    }
+
+    @Test
+    void waitersGiveUpAfterTheirMaxWait() throws Exception {
+        OpenAIAdmission admission = new OpenAIAdmission(meterRegistry, true, 1, 1, 1, 0.9, Duration.ofSeconds(10),
+                10, 10, Duration.ofMillis(50), Duration.ofSeconds(2), Duration.ofSeconds(2), Duration.ofSeconds(3));
+        Permit held = admission.acquire(Priority.URGENT);
+
+        long start = System.nanoTime();
+        assertThrows(OpenAIAdmission.Rejected.class, () -> admission.acquire(Priority.ROUTINE));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, admission.queued());
+        assertEquals(1, shed("routine", "timeout"));
+
+        held.release();
+        assertEquals(0, admission.inFlight());
+        admission.acquire(Priority.ROUTINE).release();
+    }
+
+    @Test
+    void limitGrowsWhileUsedAndShrinksOnUpstreamFailures() throws Exception {
+        OpenAIAdmission admission = new OpenAIAdmission(meterRegistry, true, 2, 1, 4, 0.5, Duration.ofSeconds(10),
+                10, 10, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1));
+
+        Permit first = admission.acquire(Priority.ROUTINE);
+        Permit second = admission.acquire(Priority.ROUTINE);
+        first.onSuccess(); // both slots in use: grows by 1/limit
+        assertEquals(2.5, admission.limit());
+        second.onSuccess(); // one slot in use: stays
+        assertEquals(2.5, admission.limit());
+
+        admission.acquire(Priority.ROUTINE).onError(new IllegalArgumentException("bad request"));
+        assertEquals(2.5, admission.limit());
+        admission.acquire(Priority.ROUTINE).onError(new ResourceAccessException("connection reset"));
+        assertEquals(1.25, admission.limit());
+        admission.acquire(Priority.ROUTINE).onError(new ResourceAccessException("connection reset"));
+        assertEquals(1.0, admission.limit());
+        assertEquals(1.0, meterRegistry.get("openai.admission.limit").gauge().value());
+    }
+
+    @Test
+    void permitsCountOnce() throws Exception {
+        OpenAIAdmission admission = admission(1, 10, 10);
+        Permit permit = admission.acquire(Priority.ROUTINE);
+        CompletableFuture<Permit> next = later(admission, Priority.ROUTINE);
+
+        permit.onSuccess();
+        permit.release();
+        permit.onError(new ResourceAccessException("late"));
+
+        assertEquals(1, admission.inFlight());
+        assertTrue(next.isDone());
+        assertNull(later(admission, Priority.URGENT).getNow(null));
+    }
+}
@@ -0,0 +1,304 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.config.OpenAIClientConfig;
+import ai.andrew.medicare_backend.events.EventLog;
+import ai.andrew.medicare_backend.stub.OpenAIStubServer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAIServiceTest {
+
+    private OpenAIStubServer stub;
+    private CloseableHttpClient httpClient;
+    private OpenAIService service;
+    private ConditionService conditionService;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatResponseCache responseCache;
+    private CircuitBreaker circuitBreaker;
+    private OpenAIAdmission admission;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new OpenAIStubServer(4);
+        conditionService = new ConditionService(new SimpleMeterRegistry());
+        conditionService.init();
+        meterRegistry = new SimpleMeterRegistry();
+        responseCache = new ChatResponseCache(meterRegistry, true, 100, Duration.ofMinutes(5));
+        httpClient = OpenAIClientConfig.pooledClient(4, Duration.ofSeconds(1), Duration.ofSeconds(2),
+                Duration.ofSeconds(1), Duration.ofSeconds(30));
+        circuitBreaker = CircuitBreaker.of("openai", CircuitBreakerConfig.custom()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .recordException(OpenAIRetryPolicy::isUpstreamFailure)
+                .build());
+        // one call at a time; nothing may wait for routine calls
+        admission = new OpenAIAdmission(meterRegistry, true, 1, 1, 1, 0.9, Duration.ofSeconds(10),
+                10, 0, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(5));
+        service = service(new OpenAIRetryPolicy(meterRegistry, 3, Duration.ofMillis(10), 0.1, 2));
+    }
+
+    private OpenAIService service(OpenAIRetryPolicy retryPolicy) {
+        return new OpenAIService(conditionService,
+                new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient)),
+                WebClient.create(),
+                responseCache,
+                circuitBreaker,
+                retryPolicy,
+                admission,
+                new EventLog(meterRegistry, false, "build/events.jsonl", 16, 16, Duration.ofSeconds(1),
+                        DataSize.ofMegabytes(1), 1),
+                meterRegistry,
+                "test-key", stub.url());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        httpClient.close();
+        stub.close();
+    }
+
+    @Test
+    void sendsPreSerializedPromptAndSchema() throws Exception {
+        String reply = service.getChatResponse("I have a headache");
+
+        assertTrue(reply.startsWith("Oh no, a headache"));
+        JsonNode sent = new ObjectMapper().readTree(stub.lastRequestBody());
+        assertEquals("system", sent.at("/messages/0/role").asText());
+        assertEquals(OpenAIService.SYSTEM_MESSAGE.get("content"), sent.at("/messages/0/content").asText());
+        assertEquals("user", sent.at("/messages/" + (sent.get("messages").size() - 1) + "/role").asText());
+        assertEquals("symptom_checker", sent.at("/functions/0/name").asText());
+        assertEquals("auto", sent.get("function_call").asText());
+    }
+
+    @Test
+    void writesHistoryAfterThePreSerializedHead() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        OpenAIService.writeCompletionBody(body, "and now \"a cough\"", "context",
+                List.of(new ChatSessionStore.Turn("user", "hi"), new ChatSessionStore.Turn("assistant", "hello")), true);
+
+        JsonNode sent = new ObjectMapper().readTree(body.toByteArray());
+        assertTrue(sent.get("stream").asBoolean());
+        assertFalse(sent.has("functions"));
+        assertEquals(List.of("system", "assistant", "user", "assistant", "user"),
+                sent.get("messages").findValuesAsText("role"));
+        assertEquals("and now \"a cough\"", sent.at("/messages/4/content").asText());
+    }
+
+    @Test
+    void readsTheFirstChoiceAndSkipsTheRest() throws Exception {
+        String response = """
+                {"id":"x","choices":[{"index":0,"message":{"role":"assistant","content":null,
+                 "function_call":{"name":"symptom_checker","arguments":"{}"}},"extra":[1,{"a":2}]},
+                 {"index":1,"message":{"content":"second"}}],"usage":{"total_tokens":3}}""";
+        try (JsonParser json = new ObjectMapper().getFactory().createParser(response)) {
+            OpenAIService.Completion completion = OpenAIService.readCompletion(json, "message");
+
+            assertNull(completion.content());
+            assertEquals(new OpenAIService.FunctionCall("symptom_checker", "{}"), completion.functionCall());
+            assertNull(json.nextToken());
+        }
+    }
+
+    @Test
+    void reusesPooledConnectionsAcrossCalls() {
+        for (int i = 0; i < 20; i++) {
+            service.getChatResponse("what should I do for a fever", false);
+        }
+        assertEquals(20, stub.requestCount());
+    }
+
+    @Test
+    void servesRepeatedQuestionsFromTheCache() {
+        String first = service.getChatResponse("What should I do for a fever?");
+        String second = service.getChatResponse("what should I do for a   fever");
+
+        assertEquals(first, second);
+        assertEquals(1, stub.requestCount());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "openai.responses")
+                .tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "openai.responses")
+                .tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void bypassSkipsTheCachedReply() {
+        service.getChatResponse("what should I do for a fever");
+        service.getChatResponse("what should I do for a fever", false);
+
+        assertEquals(2, stub.requestCount());
+        assertEquals(1, responseCache.size());
+    }
+
+    @Test
+    void apologiesAreNotCached() {
+        stub.respondWith(500, "{\"error\":{\"message\":\"boom\"}}");
+        service.getChatResponse("hello there");
+
+        assertEquals(0, responseCache.size());
+    }
+
+    @Test
+    void answersSymptomCheckerCallsLocally() {
+        stub.respondWith(200, OpenAIStubServer.functionCallCompletion("sore throat and runny nose"));
+
+        String reply = service.getChatResponse("sore throat and runny nose");
+
+        assertTrue(reply.startsWith("Symptom Checker Result:"));
+        assertTrue(reply.contains("Common cold"));
+    }
+
+    @Test
+    void upstreamErrorsBecomeAnApology() {
+        stub.respondWith(500, "{\"error\":{\"message\":\"boom\"}}");
+
+        assertTrue(service.getChatResponse("hello").startsWith("Sorry"));
+    }
+
+    @Test
+    void retriesTransientFailures() {
+        stub.failNext(2, 503);
+
+        String reply = service.getChatResponse("I have a headache");
+
+        assertTrue(reply.startsWith("Oh no, a headache"));
+        assertEquals(3, stub.requestCount());
+        assertEquals(2.0, meterRegistry.get("openai.retries").tag("result", "retried").counter().count());
+    }
+
+    @Test
+    void stopsRetryingAndKeepsTheInterruptWhenInterrupted() throws Exception {
+        stub.failNext(2, 503);
+        OpenAIService patient = service(new OpenAIRetryPolicy(meterRegistry, 3, Duration.ofMinutes(1), 0.1, 2));
+        AtomicReference<OpenAIService.ChatReply> reply = new AtomicReference<>();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread caller = new Thread(() -> {
+            reply.set(patient.chat("I have a headache", null, List.of(), false, null));
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        caller.start();
+        while (stub.requestCount() < 1 || caller.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(5); // until it backs off after the first 503
+        }
+
+        caller.interrupt();
+        caller.join(5_000);
+
+        assertFalse(caller.isAlive());
+        assertTrue(interrupted.get());
+        assertFalse(reply.get().answered());
+        assertEquals(1, stub.requestCount());
+        assertEquals(1.0, meterRegistry.get("openai.fallbacks").tag("reason", "interrupted").counter().count());
+    }
+
+    @Test
+    void givesTheAdmissionSlotBackWhileBackingOff() throws Exception {
+        stub.failNext(1, 503);
+
+        assertTrue(service.getChatResponse("I have a headache", false).startsWith("Oh no, a headache"));
+
+        // each attempt was admitted on its own, and nothing is held afterwards
+        assertEquals(2, meterRegistry.get("openai.admission.wait").tag("priority", "elevated").timer().count());
+        assertEquals(0, admission.inFlight());
+    }
+
+    @Test
+    void stopsRetryingWhenTheBudgetIsSpent() {
+        stub.respondWith(503, "{\"error\":{\"message\":\"overloaded\"}}");
+
+        service.getChatResponse("first question", false);   // spends the reserve of 2 retries
+        service.getChatResponse("second question", false);  // nothing left to retry with
+
+        assertEquals(4, stub.requestCount());
+        assertEquals(1.0, meterRegistry.get("openai.retries").tag("result", "budget_exhausted").counter().count());
+    }
+
+    @Test
+    void doesNotRetryRejectedRequests() {
+        stub.respondWith(400, "{\"error\":{\"message\":\"bad request\"}}");
+
+        service.getChatResponse("hello", false);
+
+        assertEquals(1, stub.requestCount());
+        assertEquals(0, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    void answersLocallyWithoutCallingOpenAiWhileTheCircuitIsOpen() throws Exception {
+        stub.respondWith(500, "{\"error\":{\"message\":\"boom\"}}");
+        for (int i = 0; i < 4 && circuitBreaker.getState() != CircuitBreaker.State.OPEN; i++) {
+            service.getChatResponse("hello " + i, false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        int calls = stub.requestCount();
+
+        // the only admission slot is taken: the local answer must not wait for (or be shed by) it
+        OpenAIAdmission.Permit busy = admission.acquire(OpenAIAdmission.Priority.URGENT);
+        try {
+            OpenAIService.ChatReply reply = service.chat("sore throat and runny nose",
+                    conditionService.keywordMatch("sore throat and runny nose"), List.of(), false, null);
+
+            assertFalse(reply.answered());
+            assertTrue(reply.text().contains("Common cold"), reply.text());
+            List<OpenAIService.ChatReply> streamed = service.streamChatResponse("hello", null, List.of(), null)
+                    .collectList().block(Duration.ofSeconds(5));
+            assertEquals(1, streamed.size());
+            assertFalse(streamed.get(0).answered());
+            assertTrue(streamed.get(0).text().contains(ConditionService.FOLLOW_UP_QUESTION));
+        } finally {
+            busy.release();
+        }
+        assertEquals(calls, stub.requestCount());
+        assertTrue(meterRegistry.find("openai.admission.shed").meters().isEmpty());
+    }
+
+    @Test
+    void passesShedCallsOnWithoutCallingOpenAi() throws Exception {
+        OpenAIAdmission.Permit busy = admission.acquire(OpenAIAdmission.Priority.URGENT);
+        try {
+            assertThrows(OpenAIAdmission.Rejected.class, () -> service.getChatResponse("sore throat", false));
+            assertThrows(OpenAIAdmission.Rejected.class, () -> service.streamChatResponse("sore throat", null, List.of(), null)
+                    .collectList().block(Duration.ofSeconds(5)));
+        } finally {
+            busy.release();
+        }
+        assertEquals(0, stub.requestCount());
+        assertTrue(service.getChatResponse("sore throat", false).startsWith("Oh no"));
+    }
+
+    @Test
+    void streamsContentDeltasUntilDone() throws Exception {
+        List<String> deltas = service.streamChatResponse("I have a headache", null, List.of(), null)
+                .map(OpenAIService.ChatReply::text)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertTrue(deltas.size() > 1);
+        assertTrue(String.join("", deltas).startsWith("Oh no, a headache"));
+        assertTrue(new ObjectMapper().readTree(stub.lastRequestBody()).get("stream").asBoolean());
+    }
+}
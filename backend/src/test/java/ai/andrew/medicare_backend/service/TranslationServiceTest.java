@@ -0,0 +1,154 @@
+package ai.andrew.medicare_backend.service;
+
+import ai.andrew.medicare_backend.catalog.Condition;
+import ai.andrew.medicare_backend.stub.LibreTranslateStubServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranslationServiceTest {
+
+    private LibreTranslateStubServer stub;
+    private ConditionService conditionService;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new LibreTranslateStubServer(8);
+        conditionService = new ConditionService(new SimpleMeterRegistry());
+        conditionService.init();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    private TranslationService translator(String precomputeLanguages) {
+        return new TranslationService(WebClient.create(stub.url()), conditionService, meterRegistry,
+                Duration.ofMillis(200), 100, Duration.ofMinutes(5), precomputeLanguages);
+    }
+
+    @Test
+    void tagsOnlyKnownLanguages() {
+        assertEquals("es", TranslationService.languageTag("es"));
+        assertEquals("auto", TranslationService.languageTag("auto"));
+        assertEquals("other", TranslationService.languageTag("zz"));
+        assertEquals("other", TranslationService.languageTag("ES-mx"));
+        assertEquals("other", TranslationService.languageTag(null));
+    }
+
+    @Test
+    void repeatedTranslationsAreServedFromTheCache() {
+        TranslationService translator = translator("");
+
+        assertEquals("[es] Rest and drink water.", translator.fromEnglish("Rest and drink water.", "es"));
+        assertEquals("[es] Rest and drink water.", translator.fromEnglish("Rest and drink water.", "es"));
+        assertEquals("[fr] Rest and drink water.", translator.fromEnglish("Rest and drink water.", "fr"));
+
+        assertEquals(2, stub.requestCount());
+    }
+
+    @Test
+    void concurrentIdenticalTranslationsShareOneCall() throws Exception {
+        TranslationService translator = translator("");
+        stub.delay(Duration.ofMillis(300));
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(pool.submit(() -> translator.toEnglish("me duele la cabeza")));
+            }
+            for (Future<String> result : results) {
+                assertEquals("[en] me duele la cabeza", result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, stub.requestCount());
+    }
+
+    @Test
+    void failedTranslationsAreRetried() {
+        TranslationService translator = translator("");
+        stub.status(500);
+        assertThrows(RuntimeException.class, () -> translator.fromEnglish("hello", "de"));
+
+        stub.status(200);
+        assertEquals("[de] hello", translator.fromEnglish("hello", "de"));
+        assertEquals(2, stub.requestCount());
+    }
+
+    @Test
+    void slowTranslationsFallBackToTheUntranslatedText() {
+        TranslationService translator = translator("");
+        stub.delay(Duration.ofMillis(600));
+
+        assertEquals("Rest and drink water.",
+                translator.fromEnglishAsync("Rest and drink water.", "es").block(Duration.ofSeconds(2)));
+        assertEquals(1.0, meterRegistry.get("translation.fallbacks").counter().count());
+    }
+
+    @Test
+    void batchesSendOnlyUncachedTextsAndFallBackTogether() {
+        TranslationService translator = translator("");
+        assertEquals("[es] fever", translator.fromEnglish("fever", "es"));
+
+        assertEquals(List.of("[es] cough", "[es] fever", "[es] cough"),
+                translator.translateAllAsync(List.of("cough", "fever", "cough"), "en", "es").block());
+        assertEquals(2, stub.requestCount());
+        assertEquals("[es] cough", translator.fromEnglish("cough", "es"));
+        assertEquals(2, stub.requestCount());
+
+        stub.status(500);
+        assertEquals(List.of("rash", "[es] fever"),
+                translator.translateAllAsync(List.of("rash", "fever"), "en", "es").block());
+        assertEquals(1.0, meterRegistry.get("translation.fallbacks").counter().count());
+    }
+
+    @Test
+    void slowBatchesFallBackWithinTheTranslationTimeout() {
+        TranslationService translator = translator("");
+        stub.delay(Duration.ofSeconds(3));
+
+        long start = System.nanoTime();
+        assertEquals(List.of("cough", "fever"),
+                translator.translateAllAsync(List.of("cough", "fever"), "en", "es").block(Duration.ofSeconds(2)));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertEquals(1.0, meterRegistry.get("translation.fallbacks").counter().count());
+    }
+
+    @Test
+    void precomputesCatalogAnswersForConfiguredLanguages() throws Exception {
+        TranslationService translator = translator("es, en, fr");
+        int expected = 2 * (conditionService.catalog().size() + 1);
+
+        translator.precompute();
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (stub.requestCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, stub.requestCount());
+
+        Condition first = conditionService.catalog().conditions().get(0);
+        assertEquals("[fr] " + first.answerText(), translator.fromEnglish(first.answerText(), "fr"));
+        assertEquals("[es] " + ConditionService.FOLLOW_UP_QUESTION,
+                translator.fromEnglish(ConditionService.FOLLOW_UP_QUESTION, "es"));
+        assertEquals(expected, stub.requestCount());
+    }
+}
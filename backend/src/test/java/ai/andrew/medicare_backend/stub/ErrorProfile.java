@@ -0,0 +1,41 @@
+package ai.andrew.medicare_backend.stub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Which share of a stub server's answers are errors, by status: e.g. {503: 0.02,
+ * 429: 0.01} answers 2% of requests with 503 and 1% with 429, at random.
+ */
+public record ErrorProfile(Map<Integer, Double> rateByStatus) {
+
+    public static final ErrorProfile NONE = new ErrorProfile(Map.of());
+
+    public ErrorProfile {
+        double total = rateByStatus.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (total > 1) {
+            throw new IllegalArgumentException("error rates add up to " + total);
+        }
+        rateByStatus = new LinkedHashMap<>(rateByStatus);
+    }
+
+    public static ErrorProfile of(int status, double rate) {
+        return new ErrorProfile(Map.of(status, rate));
+    }
+
+    /** The error status for one request, or 0 to answer it normally. */
+    public int pick() {
+        if (rateByStatus.isEmpty()) {
+            return 0;
+        }
+        double draw = ThreadLocalRandom.current().nextDouble();
+        for (Map.Entry<Integer, Double> entry : rateByStatus.entrySet()) {
+            draw -= entry.getValue();
+            if (draw < 0) {
+                return entry.getKey();
+            }
+        }
+        return 0;
+    }
+}
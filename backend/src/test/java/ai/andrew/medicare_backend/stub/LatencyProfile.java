@@ -0,0 +1,63 @@
+package ai.andrew.medicare_backend.stub;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long a stub server takes to answer: a fixed delay, a uniform range, or a
+ * log-normal distribution given by its median and 99th percentile (the usual shape of
+ * real upstream latencies: most calls near the median, a long tail).
+ */
+public record LatencyProfile(Kind kind, Duration first, Duration second) {
+
+    public enum Kind { FIXED, UNIFORM, LOG_NORMAL }
+
+    public static final LatencyProfile NONE = fixed(Duration.ZERO);
+
+    // z-score of the 99th percentile of a standard normal distribution
+    private static final double Z99 = 2.3263;
+
+    public static LatencyProfile fixed(Duration delay) {
+        return new LatencyProfile(Kind.FIXED, delay, delay);
+    }
+
+    public static LatencyProfile uniform(Duration min, Duration max) {
+        return new LatencyProfile(Kind.UNIFORM, min, max);
+    }
+
+    public static LatencyProfile logNormal(Duration median, Duration p99) {
+        if (p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("p99 " + p99 + " is below the median " + median);
+        }
+        return new LatencyProfile(Kind.LOG_NORMAL, median, p99);
+    }
+
+    /** One latency drawn from the profile, in milliseconds. */
+    public long sampleMillis() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (kind) {
+            case FIXED -> first.toMillis();
+            case UNIFORM -> random.nextLong(first.toMillis(), second.toMillis() + 1);
+            case LOG_NORMAL -> {
+                double mu = Math.log(Math.max(1, first.toMillis()));
+                double sigma = (Math.log(Math.max(1, second.toMillis())) - mu) / Z99;
+                yield Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+            }
+        };
+    }
+
+    /** Sleeps for one sample; false if interrupted (the stub is shutting down). */
+    boolean await() {
+        long millis = sampleMillis();
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
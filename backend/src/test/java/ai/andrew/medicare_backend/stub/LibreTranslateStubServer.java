@@ -0,0 +1,124 @@
+package ai.andrew.medicare_backend.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+
+/**
+ * Local stand-in for a LibreTranslate server, used by tests and benchmarks.
+ *
+ * Answers POST /translate with {"translatedText":"[target] q"}, so callers can see
+ * both that the text was translated and into which language. A "q" array (a batch)
+ * is answered with a "translatedText" array in the same order. A delay and an error
+ * status can be set to simulate a slow or broken translator; for load tests the
+ * latency and errors can instead be drawn at random per request ({@link #latency},
+ * {@link #errors}).
+ */
+public class LibreTranslateStubServer implements AutoCloseable {
+
+    public static final String PATH = "/translate";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile LatencyProfile latency = LatencyProfile.NONE;
+    private volatile ErrorProfile errors = ErrorProfile.NONE;
+    private volatile int status = 200;
+
+    public LibreTranslateStubServer() throws IOException {
+        this(64);
+    }
+
+    public LibreTranslateStubServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    /** Base URL of the stub, for libretranslate.url. */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public LibreTranslateStubServer delay(Duration delay) {
+        return latency(LatencyProfile.fixed(delay));
+    }
+
+    /** Makes every later response wait a time drawn from {@code latency}. */
+    public LibreTranslateStubServer latency(LatencyProfile latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /** Answers that share of later requests with an error, at random. */
+    public LibreTranslateStubServer errors(ErrorProfile errors) {
+        this.errors = errors;
+        return this;
+    }
+
+    /** Status for later requests; anything but 200 returns an error body. */
+    public LibreTranslateStubServer status(int status) {
+        this.status = status;
+        return this;
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    /** What the stub returns for a translation of {@code text} into {@code target}. */
+    public static String translated(String text, String target) {
+        return "[" + target + "] " + text;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = MAPPER.readTree(body);
+            }
+            if (!latency.await()) {
+                return;
+            }
+            int fault = errors.pick();
+            int status = fault != 0 ? fault : this.status;
+            String target = request.path("target").asText();
+            JsonNode q = request.path("q");
+            Object translatedText = q.isArray()
+                    ? StreamSupport.stream(q.spliterator(), false).map(text -> translated(text.asText(), target)).toList()
+                    : translated(q.asText(), target);
+            byte[] response = status == 200
+                    ? MAPPER.writeValueAsBytes(Map.of("translatedText", translatedText))
+                    : "{\"error\":\"stub failure\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
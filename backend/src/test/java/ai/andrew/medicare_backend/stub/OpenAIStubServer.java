@@ -0,0 +1,252 @@
+package ai.andrew.medicare_backend.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the OpenAI Chat Completions API, used by tests and benchmarks
+ * so nothing ever leaves the machine or spends API credits.
+ *
+ * Answers POST /v1/chat/completions with a canned completion (a plain assistant
+ * message by default, see {@link #respondWith}). Requests with "stream":true get the
+ * same content back as chat.completion.chunk Server-Sent Events, one word per chunk,
+ * ending with "data: [DONE]". Keep-alive works like the real API.
+ *
+ * Faults can be injected: {@link #failNext} answers the next requests with an error
+ * status, {@link #delay} slows every response down.
+ *
+ * For load tests the behaviour can also be drawn at random per request: a latency
+ * distribution ({@link #latency}, before the first byte), an error mix ({@link #errors}),
+ * a share of symptom_checker function calls ({@link #functionCalls}, with the user's
+ * message as the symptoms) and the pace of streamed chunks ({@link #chunkInterval}).
+ */
+public class OpenAIStubServer implements AutoCloseable {
+
+    public static final String PATH = "/v1/chat/completions";
+
+    public static final String DEFAULT_COMPLETION = """
+            {"id":"chatcmpl-stub","object":"chat.completion","created":0,"model":"gpt-3.5-turbo",
+             "choices":[{"index":0,"finish_reason":"stop","message":{"role":"assistant",
+             "content":"Oh no, a headache can really slow you down! Rest in a quiet, dark room and drink some water. How long has it been bothering you?"}}],
+             "usage":{"prompt_tokens":700,"completion_tokens":30,"total_tokens":730}}
+            """;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern STREAM_REQUEST = Pattern.compile("\"stream\"\\s*:\\s*true");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger faultsLeft = new AtomicInteger();
+    private volatile int faultStatus = 503;
+    private volatile byte[] completion = DEFAULT_COMPLETION.getBytes(StandardCharsets.UTF_8);
+    private volatile int status = 200;
+    private volatile LatencyProfile latency = LatencyProfile.NONE;
+    private volatile ErrorProfile errors = ErrorProfile.NONE;
+    private volatile double functionCallRate;
+    private volatile Duration chunkInterval = Duration.ZERO;
+    private final Map<Integer, AtomicInteger> responsesByStatus = new ConcurrentHashMap<>();
+    private volatile String lastRequestBody;
+
+    public OpenAIStubServer() throws IOException {
+        this(64);
+    }
+
+    public OpenAIStubServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    /** Full URL of the stubbed completions endpoint, for openai.api.url. */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    public OpenAIStubServer respondWith(int status, String json) {
+        this.status = status;
+        this.completion = json.getBytes(StandardCharsets.UTF_8);
+        return this;
+    }
+
+    /** Makes every later response wait this long, like a slow upstream. */
+    public OpenAIStubServer delay(Duration delay) {
+        return latency(LatencyProfile.fixed(delay));
+    }
+
+    /** Makes every later response wait a time drawn from {@code latency}. */
+    public OpenAIStubServer latency(LatencyProfile latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /** Answers that share of later requests with an error, at random. */
+    public OpenAIStubServer errors(ErrorProfile errors) {
+        this.errors = errors;
+        return this;
+    }
+
+    /**
+     * Answers that share of later non-streamed requests with a symptom_checker function
+     * call for the last user message, instead of the completion.
+     */
+    public OpenAIStubServer functionCalls(double rate) {
+        this.functionCallRate = rate;
+        return this;
+    }
+
+    /** Pause between streamed chunks, like a model generating tokens. */
+    public OpenAIStubServer chunkInterval(Duration interval) {
+        this.chunkInterval = interval;
+        return this;
+    }
+
+    /** Answers the next {@code requests} requests with {@code status}, then recovers. */
+    public OpenAIStubServer failNext(int requests, int status) {
+        this.faultStatus = status;
+        this.faultsLeft.set(requests);
+        return this;
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    /** Most requests that were being handled at the same time. */
+    public int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    public String lastRequestBody() {
+        return lastRequestBody;
+    }
+
+    /** How many responses were sent with each status, so far. */
+    public Map<Integer, Integer> responsesByStatus() {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        responsesByStatus.forEach((code, count) -> counts.put(code, count.get()));
+        return counts;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            requests.incrementAndGet();
+            String requestBody;
+            try (InputStream body = exchange.getRequestBody()) {
+                requestBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            lastRequestBody = requestBody;
+            if (!latency.await()) {
+                return;
+            }
+            int fault = faultsLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0 ? faultStatus : errors.pick();
+            if (fault != 0) {
+                byte[] error = "{\"error\":{\"message\":\"injected fault\"}}".getBytes(StandardCharsets.UTF_8);
+                send(exchange, fault, error);
+                return;
+            }
+            if (status == 200 && STREAM_REQUEST.matcher(requestBody).find()) {
+                stream(exchange);
+                return;
+            }
+            if (status == 200 && functionCallRate > 0 && ThreadLocalRandom.current().nextDouble() < functionCallRate) {
+                send(exchange, 200, functionCallFor(requestBody));
+                return;
+            }
+            send(exchange, status, completion);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] response) throws IOException {
+        countResponse(status);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private void countResponse(int status) {
+        responsesByStatus.computeIfAbsent(status, code -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /** A symptom_checker call whose arguments are the last message of the request. */
+    private static byte[] functionCallFor(String requestBody) throws IOException {
+        JsonNode messages = MAPPER.readTree(requestBody).path("messages");
+        String symptoms = messages.path(messages.size() - 1).path("content").asText("");
+        Map<String, Object> call = Map.of("name", "symptom_checker",
+                "arguments", MAPPER.writeValueAsString(Map.of("symptoms", symptoms)));
+        return MAPPER.writeValueAsBytes(Map.of(
+                "id", "chatcmpl-stub", "object", "chat.completion", "model", "gpt-3.5-turbo",
+                "choices", List.of(Map.of("index", 0, "finish_reason", "function_call",
+                        "message", Map.of("role", "assistant", "function_call", call)))));
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        countResponse(200);
+        String content = MAPPER.readTree(completion).path("choices").path(0).path("message").path("content").asText("");
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            String[] words = content.split("(?<= )");
+            for (String word : words) {
+                String chunk = MAPPER.writeValueAsString(Map.of(
+                        "object", "chat.completion.chunk",
+                        "choices", List.of(Map.of("index", 0, "delta", Map.of("content", word)))));
+                out.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                if (!chunkInterval.isZero()) {
+                    try {
+                        Thread.sleep(chunkInterval.toMillis());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** A completion where the model asks to call symptom_checker with the given symptoms. */
+    public static String functionCallCompletion(String symptoms) {
+        return """
+                {"id":"chatcmpl-stub","object":"chat.completion","created":0,"model":"gpt-3.5-turbo",
+                 "choices":[{"index":0,"finish_reason":"function_call",
+                 "function_call":{"name":"symptom_checker","arguments":"{\\"symptoms\\":\\"%s\\"}"},
+                 "message":{"role":"assistant","content":null,
+                 "function_call":{"name":"symptom_checker","arguments":"{\\"symptoms\\":\\"%s\\"}"}}}]}
+                """.formatted(symptoms, symptoms);
+    }
+}